@@ -0,0 +1,96 @@
+#!/usr/bin/env python3
+"""Tabulates index build time against numIndexThreads for a sweep (e.g. sift-1m-build-scaling).
+
+Runs are grouped by algorithm and merge settings (hnswNumMergeWorkers, mergeSchedulerMaxThreads);
+within a group the speedup and parallel efficiency are relative to the run with the fewest threads.
+
+Usage: python3 build_scaling.py --sweep-dir results/<benchmark-id>/<sweep> [--plot build-scaling.png]
+"""
+
+import argparse
+import csv
+import json
+from collections import defaultdict
+from pathlib import Path
+
+GROUP_KEYS = ['algoToRun', 'hnswNumMergeWorkers', 'mergeSchedulerMaxThreads']
+
+
+def load_runs(sweep_dir):
+    runs = []
+    for results_file in sorted(Path(sweep_dir).glob('*/results.json')):
+        results = json.load(open(results_file))
+        config, metrics = results['configuration'], results['metrics']
+        build_time = metrics.get('hnsw-indexing-time', metrics.get('cuvs-indexing-time'))
+        if build_time is None or metrics.get('index-cache-hit'):
+            continue  # skipIndexing run, or an index reused from the index cache
+        runs.append({
+            'algoToRun': config.get('algoToRun'),
+            'hnswNumMergeWorkers': max(1, config.get('hnswNumMergeWorkers') or 1),
+            'mergeSchedulerMaxThreads': metrics.get('merge-scheduler-max-threads', 'auto'),
+            'numIndexThreads': config.get('numIndexThreads'),
+            'build-time-ms': build_time,
+            'merge-total-time': metrics.get('merge-total-time', 0),
+            'force-merge-time': metrics.get('force-merge-time', 0),
+            'available-processors': metrics.get('available-processors'),
+        })
+    return runs
+
+
+def main():
+    parser = argparse.ArgumentParser(description='Index build time scaling across thread counts')
+    parser.add_argument('--sweep-dir', required=True, help='Directory with one sub-directory per run')
+    parser.add_argument('--output', default=None, help='CSV output file (default: <sweep-dir>/build-scaling.csv)')
+    parser.add_argument('--plot', default=None, help='Optional PNG with one build time curve per group')
+    args = parser.parse_args()
+
+    groups = defaultdict(list)
+    for run in load_runs(args.sweep_dir):
+        groups[tuple(run[k] for k in GROUP_KEYS)].append(run)
+
+    rows = []
+    for key, runs in sorted(groups.items(), key=lambda item: str(item[0])):
+        runs.sort(key=lambda run: run['numIndexThreads'])
+        base = runs[0]
+        for run in runs:
+            speedup = base['build-time-ms'] / run['build-time-ms']
+            run['speedup'] = round(speedup, 3)
+            run['efficiency'] = round(speedup * base['numIndexThreads'] / run['numIndexThreads'], 3)
+            rows.append(run)
+
+    if not rows:
+        print(f"No indexing runs found under {args.sweep_dir}")
+        return
+    output = args.output or str(Path(args.sweep_dir) / 'build-scaling.csv')
+    with open(output, 'w', newline='') as f:
+        writer = csv.DictWriter(f, fieldnames=list(rows[0].keys()))
+        writer.writeheader()
+        writer.writerows(rows)
+
+    print(f"{'group':60} {'threads':>7} {'build ms':>10} {'merge ms':>10} {'speedup':>8} {'eff':>6}")
+    for run in rows:
+        group = ' '.join(f"{k}={run[k]}" for k in GROUP_KEYS)
+        print(f"{group:60} {run['numIndexThreads']:>7} {run['build-time-ms']:>10} {run['merge-total-time']:>10} "
+              f"{run['speedup']:>8} {run['efficiency']:>6}")
+    print(f"Written to {output}")
+
+    if args.plot:
+        import matplotlib
+        matplotlib.use("Agg")
+        import matplotlib.pyplot as plt
+        plt.figure(figsize=(10, 7))
+        for key, runs in groups.items():
+            label = ', '.join(f"{k}={v}" for k, v in zip(GROUP_KEYS, key))
+            plt.plot([r['numIndexThreads'] for r in runs], [r['build-time-ms'] / 1000 for r in runs], marker='o',
+                     label=label)
+        plt.xscale('log', base=2)
+        plt.xlabel('numIndexThreads')
+        plt.ylabel('Build time (s)')
+        plt.legend(fontsize='small')
+        plt.grid(True, which='both', alpha=0.3)
+        plt.savefig(args.plot, bbox_inches='tight')
+        print(f"Plot written to {args.plot}")
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,254 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopKnnCollector;
+import org.apache.lucene.util.Bits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Batched multi-query search, for offline jobs (re-embedding, dedup) that have a block of query
+ * vectors at hand rather than one query at a time. Instead of a search(query) per vector, which
+ * rewrites the query, iterates the leaves and creates collector managers for every vector, a batch
+ * iterates the leaves once and searches every vector of the batch on a leaf before moving to the
+ * next, so the leaf's graph and vectors stay hot across the batch. The hits of every leaf are
+ * merged into preallocated per-query top lists, and the targets, hits and id buffers are reused
+ * across batches.
+ *
+ * The queries after the warm-up queries run in batches of 1, 2, 4, ... up to batchSearchMaxSize,
+ * on queryThreads threads that each take the next batch, and every batch size reports its
+ * throughput and per-batch latency, giving the batch size versus throughput curve, and the recall
+ * of its hits against the ground truth, which should not depend on the batch size.
+ */
+public class BatchSearchBenchmark extends QueryBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(BatchSearchBenchmark.class.getName());
+
+  private final GroundTruth groundTruth;
+  private final int k;
+
+  private BatchSearchBenchmark(BenchmarkConfiguration config, IndexReader reader, VectorProvider queries,
+      GroundTruth groundTruth) throws IOException {
+    super(config, reader, queries);
+    this.groundTruth = groundTruth;
+    this.k = config.getEffectiveEfSearch();
+  }
+
+  /**
+   * Measures the throughput and recall of every batch size, adding the batch-search-* metrics
+   */
+  public static void run(IndexReader reader, BenchmarkConfiguration config, VectorProvider queries,
+      GroundTruth groundTruth, Map<String, Object> metrics) throws IOException, InterruptedException {
+    new BatchSearchBenchmark(config, reader, queries, groundTruth).run(metrics);
+  }
+
+  private void run(Map<String, Object> metrics) throws IOException, InterruptedException {
+    List<Integer> batchSizes = new ArrayList<>();
+    for (int size = 1; size < config.batchSearchMaxSize; size *= 2) {
+      batchSizes.add(size);
+    }
+    batchSizes.add(config.batchSearchMaxSize);
+    int threads = Math.max(1, config.queryThreads);
+    log.info("Starting batch search benchmark: batch sizes {}, {} threads", batchSizes, threads);
+
+    // The warm-up queries, one batch at a time on this thread
+    int warmUp = Math.min(config.numWarmUpQueries, numQueries);
+    Batch warmUpBatch = new Batch(config.batchSearchMaxSize);
+    for (int q = 0; q < warmUp; q += config.batchSearchMaxSize) {
+      warmUpBatch.search(q, Math.min(q + config.batchSearchMaxSize, warmUp));
+    }
+
+    List<Map<String, Object>> levels = new ArrayList<>();
+    double baselineThroughput = 0;
+    for (int batchSize : batchSizes) {
+      Map<String, Object> level = runLevel(batchSize, warmUp, threads);
+      double throughput = (Double) level.get("throughput");
+      if (levels.isEmpty()) {
+        baselineThroughput = throughput;
+      }
+      level.put("throughput-speedup", baselineThroughput > 0 ? throughput / baselineThroughput : 0);
+      levels.add(level);
+      log.info("Batch size {}: {} qps, batch latency p50 {} ms, p99 {} ms, recall {}%", batchSize,
+          String.format("%.1f", throughput), String.format("%.3f", level.getOrDefault("batch-latency-p50", 0.0)),
+          String.format("%.3f", level.getOrDefault("batch-latency-p99", 0.0)),
+          String.format("%.2f", level.get("recall-accuracy")));
+    }
+    metrics.put("batch-search-threads", threads);
+    metrics.put("batch-search-levels", levels);
+  }
+
+  /**
+   * Searches queries [from, numQueries) in batches of batchSize on threads threads, and checks
+   * their hits against the ground truth after timing every batch
+   */
+  private Map<String, Object> runLevel(int batchSize, int from, int threads)
+      throws IOException, InterruptedException {
+    int numBatches = (numQueries - from + batchSize - 1) / batchSize;
+    AtomicInteger nextBatch = new AtomicInteger();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    DoubleAdder totalRecall = new DoubleAdder();
+    LatencyHistogram[] latencies = new LatencyHistogram[threads];
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+    long start = System.nanoTime();
+    for (int thread = 0; thread < threads; thread++) {
+      LatencyHistogram histogram = latencies[thread] = new LatencyHistogram();
+      pool.submit(() -> {
+        try {
+          // Every thread reuses its own batch buffers for all its batches
+          Batch batch = new Batch(batchSize);
+          for (int b = nextBatch.getAndIncrement(); b < numBatches && failure.get() == null;
+              b = nextBatch.getAndIncrement()) {
+            int first = from + b * batchSize;
+            int end = Math.min(first + batchSize, numQueries);
+            long batchStart = System.nanoTime();
+            batch.search(first, end);
+            histogram.record(System.nanoTime() - batchStart);
+            totalRecall.add(batch.recall(first, end));
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        }
+      });
+    }
+    pool.shutdown();
+    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+    long elapsed = System.nanoTime() - start;
+    if (failure.get() != null) {
+      throw new IOException("Batch search failed", failure.get());
+    }
+
+    LatencyHistogram merged = new LatencyHistogram();
+    for (LatencyHistogram histogram : latencies) {
+      merged.add(histogram);
+    }
+    Map<String, Object> level = new LinkedHashMap<>();
+    level.put("batch-size", batchSize);
+    level.put("batches", merged.count());
+    level.put("queries", numQueries - from);
+    level.put("throughput", (numQueries - from) / (elapsed / 1e9));
+    level.put("mean-batch-latency", merged.meanNanos() / 1e6);
+    level.put("mean-query-latency", merged.meanNanos() / 1e6 / batchSize);
+    merged.addPercentiles(level, "batch-latency");
+    // In percent, like the recall of the closed-loop search
+    level.put("recall-accuracy", numQueries > from ? totalRecall.sum() / (numQueries - from) * 100 : 0.0);
+    return level;
+  }
+
+  /**
+   * The reusable buffers of one batch: the targets, the merged top hits of every query and their ids
+   */
+  private final class Batch {
+    private final float[][] floatTargets;
+    private final byte[][] byteTargets;
+    private final ScoreDoc[][] hits;
+    private final int[] hitCounts;
+    private final int[][] ids;
+    private final int[] sortedIds;
+
+    Batch(int maxSize) {
+      floatTargets = new float[maxSize][];
+      byteTargets = config.byteVectors ? new byte[maxSize][] : null;
+      hits = new ScoreDoc[maxSize][config.topK];
+      for (ScoreDoc[] queryHits : hits) {
+        for (int i = 0; i < queryHits.length; i++) {
+          queryHits[i] = new ScoreDoc(-1, Float.NEGATIVE_INFINITY);
+        }
+      }
+      hitCounts = new int[maxSize];
+      ids = new int[maxSize][config.topK];
+      sortedIds = new int[config.topK];
+    }
+
+    /**
+     * Searches queries [from, to) leaf by leaf, then resolves the ids of their top hits
+     */
+    void search(int from, int to) throws IOException {
+      int size = to - from;
+      for (int q = 0; q < size; q++) {
+        floatTargets[q] = queries.get(from + q);
+        if (byteTargets != null) {
+          byteTargets[q] = MappedByteVectorProvider.toByteVector(floatTargets[q],
+              MappedByteVectorProvider.isUnsigned(config.datasetFile));
+        }
+        hitCounts[q] = 0;
+      }
+      for (LeafReaderContext leaf : reader.leaves()) {
+        LeafReader leafReader = leaf.reader();
+        Bits liveDocs = leafReader.getLiveDocs();
+        for (int q = 0; q < size; q++) {
+          // A KnnCollector holds the state of one search, it cannot be reset for the next
+          TopKnnCollector collector = new TopKnnCollector(k, Integer.MAX_VALUE);
+          if (byteTargets != null) {
+            leafReader.searchNearestVectors(config.vectorColName, byteTargets[q], collector, liveDocs);
+          } else {
+            leafReader.searchNearestVectors(config.vectorColName, floatTargets[q], collector, liveDocs);
+          }
+          merge(q, collector.topDocs(), leaf.docBase);
+        }
+      }
+      for (int q = 0; q < size; q++) {
+        idResolver.resolve(hits[q], hitCounts[q], ids[q]);
+      }
+    }
+
+    /**
+     * Sum of the recall of the ids of queries [from, to), which were searched last, against their
+     * ground truth rows
+     */
+    double recall(int from, int to) {
+      double sum = 0;
+      for (int q = 0; q < to - from; q++) {
+        int count = hitCounts[q];
+        if (count == 0) {
+          continue;
+        }
+        int[] sorted = count == sortedIds.length ? sortedIds : new int[count];
+        System.arraycopy(ids[q], 0, sorted, 0, count);
+        Arrays.sort(sorted);
+        sum += QueryResult.countMatches(sorted, groundTruth.row(from + q)) / (double) count;
+      }
+      return sum;
+    }
+
+    /**
+     * Merges the hits of a leaf into the top hits of query q, kept sorted by descending score
+     */
+    private void merge(int q, TopDocs leafHits, int docBase) {
+      ScoreDoc[] top = hits[q];
+      int count = hitCounts[q];
+      for (ScoreDoc hit : leafHits.scoreDocs) {
+        if (count == top.length && hit.score <= top[count - 1].score) {
+          break; // the leaf's hits are sorted too, none of the rest make it
+        }
+        // Insertion sort into the preallocated ScoreDocs, the last one drops out when full
+        int i = count < top.length ? count++ : count - 1;
+        ScoreDoc slot = top[i];
+        for (; i > 0 && top[i - 1].score < hit.score; i--) {
+          top[i] = top[i - 1];
+        }
+        top[i] = slot;
+        slot.doc = docBase + hit.doc;
+        slot.score = hit.score;
+      }
+      hitCounts[q] = count;
+    }
+  }
+}
@@ -14,6 +14,36 @@ public class BenchmarkConfiguration {
   public int flushFreq;
   public int topK;
   public int numIndexThreads;
+  public int indexingBlockSize;         // doc ids claimed (and vectors read) at a time per indexing thread
+  public boolean batchedIndexing;       // reuse per-thread documents and add each block with addDocuments
+  public boolean pipelinedIngestion;    // read vector blocks on dedicated reader threads ahead of indexing
+  public int numReaderThreads;          // reader threads for pipelinedIngestion (numIndexThreads / 4 by default)
+  public int prefetchBlocks;            // reusable blocks in the pipelinedIngestion ring (2 * numIndexThreads by default)
+  public int checkpointIntervalSec;     // > 0: commit a resumable checkpoint this often, resume from the last one
+  public int numPartitions;             // > 1: build this many partial indexes in parallel and combine them with addIndexes
+  public boolean nrtMode;               // index while querying an NRT searcher, reporting per time window
+  public int nrtIndexingRate;           // nrtMode docs per second over all indexing threads, 0 for unlimited
+  public int nrtRefreshIntervalMs;      // nrtMode searcher refresh period (1000 by default)
+  public int nrtReportIntervalMs;       // nrtMode reporting window (5000 by default)
+  public int nrtRecallSampleRate;       // nrtMode exact recall for 1 in n queries (10 by default)
+  public double openLoopQps;            // > 0: after the search, offer open-loop query load starting at this rate
+  public double openLoopMaxQps;         // > openLoopQps: step the offered load up to this rate, to find the knee
+  public int openLoopSteps;             // offered load levels, geometric from openLoopQps to openLoopMaxQps (8 by default)
+  public int openLoopDurationSec;       // duration of every offered load level (30 by default)
+  public String openLoopArrival;        // POISSON (default) or CONSTANT inter-arrival times
+  public int openLoopThreads;           // threads executing open-loop queries (queryThreads by default)
+  public double openLoopKneeFactor;     // saturated when p99 latency exceeds this times the first level's (5 by default)
+  public int intraQueryThreads;         // > 1: search the segments of a query with this many threads, and measure
+                                        // single-query latency at 1, 2, 4, ... up to this many threads
+  public int searchSliceMaxDocs;        // intraQueryThreads slices: max docs per slice (250000 by default)
+  public int searchSliceMaxSegments;    // intraQueryThreads slices: max segments per slice (1 by default)
+  public boolean virtualThreadQueries;  // run every query of the search on its own virtual thread, not on queryThreads;
+                                        // the measured queries start once the warm-up queries are done
+  public int simulatedClients;          // > 0: after the search, this many clients query with a fixed pool and with
+                                        // virtual threads, for comparison
+  public double clientThinkTimeMs;      // simulatedClients mean (exponential) think time between queries, 0 for none
+  public int clientDurationSec;         // simulatedClients duration per executor (30 by default)
+  public int batchSearchMaxSize;        // > 0: after the search, search the queries in batches of 1, 2, 4, ... up to this
   public int cuvsWriterThreads;
   public int queryThreads;
   public boolean createIndexInMemory;
@@ -26,13 +56,37 @@ public class BenchmarkConfiguration {
   public String cuvsIndexDirPath;
   public String hnswIndexDirPath;
   public boolean loadVectorsInMemory;
+  public boolean offHeapVectors;        // with loadVectorsInMemory, keep vectors in one flat off-heap segment
+  public boolean mmapVectors;           // memory-map uncompressed fvecs/fbin/bvecs instead of streaming
+  public boolean byteVectors;           // index uint8/int8 datasets (.bvecs, .u8bin, .i8bin) as byte vectors, LUCENE_HNSW only
+  public int blockCacheSize;            // decoded blocks cached when reading .vblk datasets (64 by default)
   public boolean skipIndexing;
+  public String idResolution;           // how hits are resolved to ids: STORED (default), DOC_VALUES or INDEX_ORDER
+  public String indexCacheDir;          // reuse indexes built with the same index parameters, stored here by key
+  public double indexCacheMaxGB;        // indexCacheDir budget, least recently used indexes are evicted (0: unlimited)
   public int forceMerge;
   public boolean enableTieredMerge;
+  public int mergeSchedulerMaxThreads;  // ConcurrentMergeScheduler merge threads, auto-detected by default
+  public int mergeSchedulerMaxMergeCount; // merges pending before indexing threads stall, maxThreads + 5 by default
+  public double tieredMaxMergedSegmentMB; // TieredMergePolicy settings, Lucene's defaults when not set
+  public double tieredSegmentsPerTier;
+  public double tieredFloorSegmentMB;
+  public double deletesPctAllowed;      // TieredMergePolicy deletes percentage allowed (5 to 50, Lucene's 20 by default)
+  public int churnRounds;               // > 0: rounds of updates/deletes on the built index, measured after each
+  public double churnFraction;          // fraction of numDocs churned per round (0.1 by default)
+  public Double churnDeleteRatio;       // fraction of churned ids deleted, the others are updated (0.5 if unset,
+                                        // 0 for update-only churn)
+  public boolean churnExpungeDeletes;   // forceMergeDeletes after every churn round
 
   // Lucene HNSW parameters
   public int hnswMaxConn;               // 16 default (max 512)
   public int hnswBeamWidth;             // 100 default (max 3200)
+  public int hnswNumMergeWorkers;       // threads building the graph of a merged segment, 1 default
+
+  // Quantized Lucene HNSW parameters (LUCENE_HNSW_SQ; LUCENE_HNSW_BQ always quantizes to 1 bit)
+  public int quantizationBits;          // 7 default, 4 or 7 (8 also accepted)
+  public Float quantizationConfidenceInterval; // null: derived from dimension, 0: dynamic, else in [0.9, 1.0]
+  public boolean quantizationCompress;  // pack two int4 values per byte (quantizationBits 4 only)
 
   // CAGRA parameters
   public int cagraIntermediateGraphDegree; // 128 default
@@ -42,13 +96,37 @@ public class BenchmarkConfiguration {
   public int cagraHnswLayers;             // layers in CAGRA->HNSW conversion
   public int efSearch;
 
-  private boolean isLucene() {
-    return "LUCENE_HNSW".equalsIgnoreCase(algoToRun);
+  /**
+   * LUCENE_HNSW and its quantized variants LUCENE_HNSW_SQ and LUCENE_HNSW_BQ, which all build Lucene
+   * HNSW indexes in hnswIndexDirPath
+   */
+  boolean isLucene() {
+    return "LUCENE_HNSW".equalsIgnoreCase(algoToRun) || isScalarQuantized() || isBinaryQuantized();
+  }
+  boolean isScalarQuantized() {
+    return "LUCENE_HNSW_SQ".equalsIgnoreCase(algoToRun);
   }
-  private boolean isCagra() {
+  boolean isBinaryQuantized() {
+    return "LUCENE_HNSW_BQ".equalsIgnoreCase(algoToRun);
+  }
+  boolean isCagra() {
     return "CAGRA_HNSW".equalsIgnoreCase(algoToRun);
   }
 
+  /**
+   * Whether documents get the id_dv doc values field (DOC_VALUES and INDEX_ORDER id resolution)
+   */
+  boolean hasIdDocValues() {
+    return getEffectiveIdResolution() != IdResolver.Mode.STORED;
+  }
+
+  public IdResolver.Mode getEffectiveIdResolution() {
+    if (idResolution == null) {
+      return IdResolver.Mode.STORED;
+    }
+    return IdResolver.Mode.valueOf(idResolution.toUpperCase());
+  }
+
   public int getEffectiveEfSearch() {
     if (efSearch > 0) {
       return efSearch;
@@ -56,6 +134,93 @@ public class BenchmarkConfiguration {
     return Math.max(topK, (int) Math.ceil(topK * 1.5));
   }
 
+  public int getEffectiveHnswNumMergeWorkers() {
+    return Math.max(1, hnswNumMergeWorkers);
+  }
+
+  public int getEffectiveQuantizationBits() {
+    if (quantizationBits > 0) {
+      return quantizationBits;
+    }
+    return 7;
+  }
+
+  public int getEffectiveNrtRefreshIntervalMs() {
+    return nrtRefreshIntervalMs > 0 ? nrtRefreshIntervalMs : 1000;
+  }
+
+  public int getEffectiveNrtReportIntervalMs() {
+    return nrtReportIntervalMs > 0 ? nrtReportIntervalMs : 5000;
+  }
+
+  public int getEffectiveNrtRecallSampleRate() {
+    return nrtRecallSampleRate > 0 ? nrtRecallSampleRate : 10;
+  }
+
+  public double getEffectiveChurnFraction() {
+    return churnFraction > 0 ? churnFraction : 0.1;
+  }
+
+  public double getEffectiveChurnDeleteRatio() {
+    return churnDeleteRatio != null ? churnDeleteRatio : 0.5;
+  }
+
+  public int getEffectiveOpenLoopSteps() {
+    return openLoopSteps > 0 ? openLoopSteps : 8;
+  }
+
+  public int getEffectiveOpenLoopDurationSec() {
+    return openLoopDurationSec > 0 ? openLoopDurationSec : 30;
+  }
+
+  public String getEffectiveOpenLoopArrival() {
+    return openLoopArrival != null ? openLoopArrival.toUpperCase() : "POISSON";
+  }
+
+  public int getEffectiveOpenLoopThreads() {
+    if (openLoopThreads > 0) {
+      return openLoopThreads;
+    }
+    return Math.max(1, queryThreads);
+  }
+
+  public double getEffectiveOpenLoopKneeFactor() {
+    return openLoopKneeFactor > 0 ? openLoopKneeFactor : 5;
+  }
+
+  public int getEffectiveSearchSliceMaxDocs() {
+    return searchSliceMaxDocs > 0 ? searchSliceMaxDocs : 250_000;
+  }
+
+  public int getEffectiveSearchSliceMaxSegments() {
+    return searchSliceMaxSegments > 0 ? searchSliceMaxSegments : 1;
+  }
+
+  public int getEffectiveClientDurationSec() {
+    return clientDurationSec > 0 ? clientDurationSec : 30;
+  }
+
+  public int getEffectiveIndexingBlockSize() {
+    if (indexingBlockSize > 0) {
+      return indexingBlockSize;
+    }
+    return 256;
+  }
+
+  public int getEffectiveNumReaderThreads() {
+    if (numReaderThreads > 0) {
+      return numReaderThreads;
+    }
+    return Math.max(1, numIndexThreads / 4);
+  }
+
+  public int getEffectivePrefetchBlocks() {
+    if (prefetchBlocks > 0) {
+      return prefetchBlocks;
+    }
+    return Math.max(2, 2 * numIndexThreads);
+  }
+
   public String prettyString() {
     StringBuilder sb = new StringBuilder();
     sb.append("Benchmark ID: ").append(benchmarkID).append('\n');
@@ -70,23 +235,88 @@ public class BenchmarkConfiguration {
     sb.append("Flush frequency (every n documents): ").append(flushFreq).append('\n');
     sb.append("TopK value is: ").append(topK).append('\n');
     sb.append("numIndexThreads is: ").append(numIndexThreads).append('\n');
+    sb.append("Indexing block size (ids claimed per thread at a time): ").append(getEffectiveIndexingBlockSize()).append('\n');
+    if (checkpointIntervalSec > 0) sb.append("Checkpoint commit interval (s): ").append(checkpointIntervalSec).append('\n');
+    if (numPartitions > 1) sb.append("Index partitions (combined with addIndexes): ").append(numPartitions).append('\n');
+    sb.append("Batched indexing (addDocuments, reused documents): ").append(batchedIndexing).append('\n');
+    sb.append("Pipelined ingestion: ").append(pipelinedIngestion).append('\n');
+    if (pipelinedIngestion) {
+      sb.append("Pipeline reader threads: ").append(getEffectiveNumReaderThreads()).append('\n');
+      sb.append("Pipeline prefetch blocks: ").append(getEffectivePrefetchBlocks()).append('\n');
+    }
+    sb.append("NRT mode (index while querying): ").append(nrtMode).append('\n');
+    if (nrtMode) {
+      sb.append("NRT indexing rate (docs/s, 0 is unlimited): ").append(nrtIndexingRate).append('\n');
+      sb.append("NRT refresh interval (ms): ").append(getEffectiveNrtRefreshIntervalMs()).append('\n');
+      sb.append("NRT report interval (ms): ").append(getEffectiveNrtReportIntervalMs()).append('\n');
+      sb.append("NRT recall sampled every n queries: ").append(getEffectiveNrtRecallSampleRate()).append('\n');
+    }
     sb.append("Query threads: ").append(queryThreads).append('\n');
+    if (virtualThreadQueries) sb.append("Queries run on virtual threads (a thread per query)").append('\n');
+    if (simulatedClients > 0) {
+      sb.append("Simulated clients: ").append(simulatedClients).append(", mean think time (ms): ")
+          .append(clientThinkTimeMs).append(", ").append(getEffectiveClientDurationSec()).append(" s per executor")
+          .append('\n');
+    }
+    if (batchSearchMaxSize > 0) sb.append("Batch search max size: ").append(batchSearchMaxSize).append('\n');
+    if (intraQueryThreads > 1) {
+      sb.append("Intra-query threads: ").append(intraQueryThreads).append(", slices of at most ")
+          .append(getEffectiveSearchSliceMaxSegments()).append(" segments and ").append(getEffectiveSearchSliceMaxDocs())
+          .append(" docs").append('\n');
+    }
+    if (openLoopQps > 0) {
+      sb.append("Open-loop offered load (qps): ").append(openLoopQps)
+          .append(openLoopMaxQps > openLoopQps ? " to " + openLoopMaxQps + " in " + getEffectiveOpenLoopSteps() + " steps" : "")
+          .append(", ").append(getEffectiveOpenLoopArrival()).append(" arrivals, ")
+          .append(getEffectiveOpenLoopDurationSec()).append(" s per level, ")
+          .append(getEffectiveOpenLoopThreads()).append(" threads").append('\n');
+    }
     sb.append("Create index in memory: ").append(createIndexInMemory).append('\n');
     sb.append("Clean index directory: ").append(cleanIndexDirectory).append('\n');
     sb.append("Save results on disk: ").append(saveResultsOnDisk).append('\n');
     sb.append("Has column names in the dataset file: ").append(hasColNames).append('\n');
-    sb.append("algoToRun {Choices: HNSW | CAGRA}: ").append(algoToRun).append('\n');
+    sb.append("algoToRun {Choices: LUCENE_HNSW | LUCENE_HNSW_SQ | LUCENE_HNSW_BQ | CAGRA_HNSW}: ").append(algoToRun).append('\n');
     sb.append("Ground Truth file used is: ").append(groundTruthFile).append('\n');
     if (cuvsIndexDirPath != null) sb.append("CuVS index directory path is: ").append(cuvsIndexDirPath).append('\n');
     if (hnswIndexDirPath != null) sb.append("HNSW index directory path is: ").append(hnswIndexDirPath).append('\n');
     sb.append("Load vectors in memory before indexing: ").append(loadVectorsInMemory).append('\n');
+    if (datasetFile != null && datasetFile.endsWith(".vblk")) sb.append("Block cache size (blocks): ").append(blockCacheSize).append('\n');
+    sb.append("Keep in-memory vectors off-heap: ").append(offHeapVectors).append('\n');
+    sb.append("Index byte vectors: ").append(byteVectors).append('\n');
+    sb.append("Memory-map vectors from the dataset file: ").append(mmapVectors).append('\n');
     sb.append("Skip indexing (and use existing index for search): ").append(skipIndexing).append('\n');
+    sb.append("Id resolution of hits: ").append(idResolution != null ? idResolution : "STORED").append('\n');
+    if (indexCacheDir != null) {
+      sb.append("Index cache directory: ").append(indexCacheDir).append('\n');
+      sb.append("Index cache budget (GB, 0 is unlimited): ").append(indexCacheMaxGB).append('\n');
+    }
     sb.append("Do force merge while indexing documents [a value < 1 implies no force merge]: ").append(forceMerge).append('\n');
+    sb.append("Enable tiered merge: ").append(enableTieredMerge).append('\n');
+    if (mergeSchedulerMaxThreads > 0) sb.append("Merge scheduler max threads: ").append(mergeSchedulerMaxThreads).append('\n');
+    if (mergeSchedulerMaxMergeCount > 0) sb.append("Merge scheduler max merge count: ").append(mergeSchedulerMaxMergeCount).append('\n');
+    if (tieredMaxMergedSegmentMB > 0) sb.append("Tiered merge max merged segment (MB): ").append(tieredMaxMergedSegmentMB).append('\n');
+    if (tieredSegmentsPerTier > 0) sb.append("Tiered merge segments per tier: ").append(tieredSegmentsPerTier).append('\n');
+    if (tieredFloorSegmentMB > 0) sb.append("Tiered merge floor segment (MB): ").append(tieredFloorSegmentMB).append('\n');
+    if (deletesPctAllowed > 0) sb.append("Tiered merge deletes pct allowed: ").append(deletesPctAllowed).append('\n');
+    if (churnRounds > 0) {
+      sb.append("Churn rounds: ").append(churnRounds).append('\n');
+      sb.append("Churn fraction per round: ").append(getEffectiveChurnFraction()).append('\n');
+      sb.append("Churn delete ratio: ").append(getEffectiveChurnDeleteRatio()).append('\n');
+      sb.append("Churn expunge deletes: ").append(churnExpungeDeletes).append('\n');
+    }
     
     sb.append("------- algo parameters ------\n");
     if (isLucene()) {
       sb.append("hnswMaxConn: ").append(hnswMaxConn).append('\n');
       sb.append("hnswBeamWidth: ").append(hnswBeamWidth).append('\n');
+      sb.append("hnswNumMergeWorkers: ").append(getEffectiveHnswNumMergeWorkers()).append('\n');
+      if (isScalarQuantized()) {
+        sb.append("quantizationBits: ").append(getEffectiveQuantizationBits()).append('\n');
+        sb.append("quantizationConfidenceInterval: ").append(quantizationConfidenceInterval).append('\n');
+        sb.append("quantizationCompress: ").append(quantizationCompress).append('\n');
+      } else if (isBinaryQuantized()) {
+        sb.append("quantizationBits: 1 (binary)").append('\n');
+      }
     } else if (isCagra()) {
       sb.append("cagraIntermediateGraphDegree: ").append(cagraIntermediateGraphDegree).append('\n');
       sb.append("cagraGraphDegree: ").append(cagraGraphDegree).append('\n');
@@ -0,0 +1,291 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.searchscale.lucene.cuvs.benchmarks.StreamingVectorProvider.FileFormat;
+
+/**
+ * Seekable block-compressed vector container (.vblk). Vectors are grouped into fixed-size blocks
+ * that are deflated independently, so reading any vector costs one block decode.
+ *
+ * Layout (little endian):
+ * <pre>
+ *   header:  magic, version, encoding, dimension, count, vectorsPerBlock, numBlocks, reserved (8 ints)
+ *   blocks:  numBlocks deflated blocks
+ *   index:   numBlocks + 1 longs, the file offset of every block followed by the end of the last block
+ *   footer:  index offset (long), magic (int)
+ * </pre>
+ * FLOAT32 blocks are byte-shuffled before deflating (all first bytes of the block's floats, then all
+ * second bytes, ...), which compresses far better than raw floats. UINT8 blocks hold bvecs components.
+ *
+ * Usage: BlockCompressedVectorFile <fvecs|fbin|bvecs file[.gz]> <output.vblk> [vectorsPerBlock] [numVectors]
+ */
+public class BlockCompressedVectorFile {
+
+    private static final Logger log = LoggerFactory.getLogger(BlockCompressedVectorFile.class.getName());
+
+    static final int MAGIC = 0x4B4C4256; // "VBLK"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int FOOTER_SIZE = 12;
+
+    static final int ENCODING_FLOAT32 = 0;
+    static final int ENCODING_UINT8 = 1;
+
+    private static final int TARGET_BLOCK_BYTES = 1 << 20;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("Usage: BlockCompressedVectorFile <input_vectors_file> <output_vblk_file> [vectorsPerBlock] [numVectors]");
+            System.exit(1);
+        }
+        int vectorsPerBlock = args.length >= 3 ? Integer.parseInt(args[2]) : 0;
+        int numVectors = args.length >= 4 ? Integer.parseInt(args[3]) : -1;
+        convert(args[0], args[1], vectorsPerBlock, numVectors);
+    }
+
+    /**
+     * Default block size: about 1MB of uncompressed vector data per block
+     */
+    static int defaultVectorsPerBlock(int dimension, int elementBytes) {
+        return Math.max(1, TARGET_BLOCK_BYTES / (dimension * elementBytes));
+    }
+
+    /**
+     * Converts an fvecs, fbin or bvecs file (optionally gzipped) into a .vblk file in one sequential pass
+     */
+    public static void convert(String inputPath, String outputPath, int vectorsPerBlock, int numVectors) throws IOException {
+        FileFormat format = FileFormat.fromPath(inputPath);
+        if (format == FileFormat.IVECS) {
+            throw new IllegalArgumentException("Unsupported input format: " + inputPath);
+        }
+        int encoding = format == FileFormat.BVECS ? ENCODING_UINT8 : ENCODING_FLOAT32;
+        int elementBytes = encoding == ENCODING_UINT8 ? 1 : 4;
+        long start = System.currentTimeMillis();
+
+        InputStream fis = new BufferedInputStream(new FileInputStream(inputPath), 1 << 20);
+        try (InputStream is = inputPath.endsWith(".gz") ? new GZIPInputStream(fis, 1 << 20) : fis) {
+            int dimension;
+            int total = -1;
+            if (format == FileFormat.FBIN) {
+                total = FBIvecsReader.getDimension(is);
+                dimension = FBIvecsReader.getDimension(is);
+                log.info("File header - total vectors: {}, dimension: {}", total, dimension);
+            } else {
+                dimension = FBIvecsReader.getDimension(is);
+            }
+            int perBlock = vectorsPerBlock > 0 ? vectorsPerBlock : defaultVectorsPerBlock(dimension, elementBytes);
+            int dataBytes = dimension * elementBytes;
+
+            try (Writer writer = new Writer(outputPath, encoding, dimension, perBlock)) {
+                byte[] record = new byte[dataBytes];
+                boolean prefixed = format != FileFormat.FBIN;
+                boolean first = true;
+                while (numVectors <= 0 || writer.count() < numVectors) {
+                    if (prefixed && !first) {
+                        byte[] prefix = is.readNBytes(4);
+                        if (prefix.length < 4) {
+                            if (prefix.length > 0) {
+                                throw new IOException("Truncated vector " + writer.count() + " in " + inputPath);
+                            }
+                            break;
+                        }
+                        int recordDimension = ByteBuffer.wrap(prefix).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                        if (recordDimension != dimension) {
+                            throw new IOException("Dimension mismatch at vector " + writer.count() +
+                                    ": expected " + dimension + ", got " + recordDimension);
+                        }
+                    }
+                    first = false;
+                    int read = is.readNBytes(record, 0, dataBytes);
+                    if (read < dataBytes) {
+                        // A prefixed record whose dimension was read, or a partial record, was cut off
+                        if (read > 0 || prefixed) {
+                            throw new IOException("Truncated vector " + writer.count() + " in " + inputPath);
+                        }
+                        break;
+                    }
+                    writer.add(record);
+                    if (writer.count() % 1_000_000 == 0) {
+                        log.info("Converted {} vectors", writer.count());
+                    }
+                }
+                int expected = numVectors > 0 ? Math.min(numVectors, total) : total;
+                if (total >= 0 && writer.count() < expected) {
+                    throw new IOException("Expected " + expected + " vectors in " + inputPath + ", found " + writer.count());
+                }
+                writer.commit();
+                log.info("Wrote {} vectors in {} blocks to {} in {} ms", writer.count(), writer.numBlocks(),
+                         outputPath, System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    /**
+     * Appends vectors, given as raw little-endian component bytes, to a new .vblk file. The file is
+     * written under a temporary name and only moved into place by commit(), after the last vector;
+     * closing without a commit deletes it, so a failed conversion never leaves a .vblk that opens.
+     */
+    static class Writer implements AutoCloseable {
+        private final Path outputFile;
+        private final Path tempFile;
+        private final FileChannel channel;
+        private final int encoding;
+        private final int dimension;
+        private final int vectorsPerBlock;
+        private final int vectorBytes;
+        private final byte[] block;
+        private final byte[] shuffled;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] compressed;
+        private long[] offsets = new long[1024];
+        private int numBlocks;
+        private int inBlock;
+        private int count;
+        private long position = HEADER_SIZE;
+        private boolean committed;
+
+        Writer(String outputPath, int encoding, int dimension, int vectorsPerBlock) throws IOException {
+            this.outputFile = Path.of(outputPath);
+            this.tempFile = outputFile.resolveSibling(outputFile.getFileName() + ".tmp");
+            this.channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.encoding = encoding;
+            this.dimension = dimension;
+            this.vectorsPerBlock = vectorsPerBlock;
+            this.vectorBytes = dimension * (encoding == ENCODING_UINT8 ? 1 : 4);
+            this.block = new byte[vectorsPerBlock * vectorBytes];
+            this.shuffled = encoding == ENCODING_FLOAT32 ? new byte[block.length] : null;
+            this.compressed = new byte[block.length + 1024];
+        }
+
+        void add(byte[] vector) throws IOException {
+            System.arraycopy(vector, 0, block, inBlock * vectorBytes, vectorBytes);
+            inBlock++;
+            count++;
+            if (inBlock == vectorsPerBlock) {
+                flushBlock();
+            }
+        }
+
+        int count() {
+            return count;
+        }
+
+        int numBlocks() {
+            return numBlocks;
+        }
+
+        private void flushBlock() throws IOException {
+            if (inBlock == 0) {
+                return;
+            }
+            int length = inBlock * vectorBytes;
+            byte[] input = block;
+            if (encoding == ENCODING_FLOAT32) {
+                shuffle(block, shuffled, inBlock * dimension);
+                input = shuffled;
+            }
+            deflater.reset();
+            deflater.setInput(input, 0, length);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+
+            if (numBlocks + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[numBlocks++] = position;
+            writeFully(ByteBuffer.wrap(compressed, 0, compressedLength), position);
+            position += compressedLength;
+            inBlock = 0;
+        }
+
+        private void writeFully(ByteBuffer buffer, long at) throws IOException {
+            while (buffer.hasRemaining()) {
+                at += channel.write(buffer, at);
+            }
+        }
+
+        /**
+         * Writes the last block, the block index, the footer and the header, and moves the file into
+         * place
+         */
+        void commit() throws IOException {
+            flushBlock();
+            offsets[numBlocks] = position;
+
+            long indexOffset = position;
+            ByteBuffer tail = ByteBuffer.allocate(8 * (numBlocks + 1) + FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i <= numBlocks; i++) {
+                tail.putLong(offsets[i]);
+            }
+            tail.putLong(indexOffset).putInt(MAGIC).flip();
+            writeFully(tail, indexOffset);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(encoding).putInt(dimension).putInt(count)
+                  .putInt(vectorsPerBlock).putInt(numBlocks).putInt(0).flip();
+            writeFully(header, 0);
+            channel.force(false);
+            channel.close();
+            Files.move(tempFile, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            channel.close();
+            if (!committed) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    /**
+     * Splits numFloats little-endian floats into four byte planes
+     */
+    static void shuffle(byte[] raw, byte[] shuffled, int numFloats) {
+        for (int i = 0; i < numFloats; i++) {
+            shuffled[i] = raw[4 * i];
+            shuffled[numFloats + i] = raw[4 * i + 1];
+            shuffled[2 * numFloats + i] = raw[4 * i + 2];
+            shuffled[3 * numFloats + i] = raw[4 * i + 3];
+        }
+    }
+
+    /**
+     * Reassembles numFloats floats from the four byte planes written by shuffle
+     */
+    static void unshuffle(byte[] shuffled, float[] dest, int numFloats) {
+        for (int i = 0; i < numFloats; i++) {
+            int bits = (shuffled[i] & 0xff)
+                    | (shuffled[numFloats + i] & 0xff) << 8
+                    | (shuffled[2 * numFloats + i] & 0xff) << 16
+                    | (shuffled[3 * numFloats + i] & 0xff) << 24;
+            dest[i] = Float.intBitsToFloat(bits);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Random-access vector provider for .vblk files (see BlockCompressedVectorFile). Decoded blocks
+ * are kept in an LRU cache, so a read costs at most one block decode and sequential or
+ * block-claiming readers decode every block about once.
+ */
+public class BlockCompressedVectorProvider implements VectorProvider {
+    private static final Logger log = LoggerFactory.getLogger(BlockCompressedVectorProvider.class.getName());
+
+    private static final int DEFAULT_CACHE_BLOCKS = 64;
+
+    private final String filePath;
+    private final FileChannel channel;
+    private final int encoding;
+    private final int dimension;
+    private final int vectorCount;
+    private final int fileVectorCount;
+    private final int vectorsPerBlock;
+    private final long[] blockOffsets;
+    private final Map<Integer, FutureTask<float[]>> cache;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private final ThreadLocal<byte[][]> scratch = new ThreadLocal<>();
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+
+    public BlockCompressedVectorProvider(String filePath, int maxVectors, int cacheBlocks) throws IOException {
+        this.filePath = filePath;
+        this.channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readFully(0, BlockCompressedVectorFile.HEADER_SIZE);
+            if (header.getInt() != BlockCompressedVectorFile.MAGIC) {
+                throw new IOException("Not a block-compressed vector file: " + filePath);
+            }
+            int version = header.getInt();
+            if (version != BlockCompressedVectorFile.VERSION) {
+                throw new IOException("Unsupported .vblk version " + version + " in " + filePath);
+            }
+            this.encoding = header.getInt();
+            this.dimension = header.getInt();
+            this.fileVectorCount = header.getInt();
+            this.vectorsPerBlock = header.getInt();
+            int numBlocks = header.getInt();
+            this.vectorCount = maxVectors > 0 ? Math.min(fileVectorCount, maxVectors) : fileVectorCount;
+
+            ByteBuffer footer = readFully(channel.size() - BlockCompressedVectorFile.FOOTER_SIZE,
+                                          BlockCompressedVectorFile.FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            if (footer.getInt() != BlockCompressedVectorFile.MAGIC) {
+                throw new IOException("Truncated block-compressed vector file: " + filePath);
+            }
+            ByteBuffer index = readFully(indexOffset, 8 * (numBlocks + 1));
+            this.blockOffsets = new long[numBlocks + 1];
+            index.asLongBuffer().get(blockOffsets);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        int capacity = cacheBlocks > 0 ? cacheBlocks : DEFAULT_CACHE_BLOCKS;
+        this.cache = new LinkedHashMap<>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, FutureTask<float[]>> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        log.info("BlockCompressedVectorProvider initialized: {} vectors, {} dimensions, {} vectors per block, {} blocks, cache of {} blocks",
+                 vectorCount, dimension, vectorsPerBlock, blockOffsets.length - 1, capacity);
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file " + filePath + " at " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public float[] get(int index) throws IOException {
+        float[] vector = new float[dimension];
+        readInto(index, vector);
+        return vector;
+    }
+
+    @Override
+    public void readInto(int index, float[] dest) throws IOException {
+        if (index < 0 || index >= vectorCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds [0, " + vectorCount + ")");
+        }
+        float[] block = block(index / vectorsPerBlock);
+        System.arraycopy(block, (index % vectorsPerBlock) * dimension, dest, 0, dimension);
+    }
+
+    @Override
+    public void readRange(int start, int count, float[][] dest) throws IOException {
+        VectorProvider.checkRange(start, count, vectorCount);
+        int i = 0;
+        while (i < count) {
+            int index = start + i;
+            float[] block = block(index / vectorsPerBlock);
+            int inBlock = Math.min(count - i, vectorsPerBlock - index % vectorsPerBlock);
+            for (int j = 0; j < inBlock; j++) {
+                System.arraycopy(block, (index % vectorsPerBlock + j) * dimension, dest[i + j], 0, dimension);
+            }
+            i += inBlock;
+        }
+    }
+
+    /**
+     * Returns the decoded block, decoding it at most once even when several threads ask for it together
+     */
+    private float[] block(int blockId) throws IOException {
+        FutureTask<float[]> task;
+        boolean owner = false;
+        synchronized (cache) {
+            task = cache.get(blockId);
+            if (task == null) {
+                task = new FutureTask<>(() -> decodeBlock(blockId));
+                cache.put(blockId, task);
+                owner = true;
+            }
+        }
+        if (owner) {
+            cacheMisses.increment();
+            task.run();
+        } else {
+            cacheHits.increment();
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            synchronized (cache) {
+                cache.remove(blockId, task);
+            }
+            throw new IOException("Failed to decode block " + blockId + " of " + filePath, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding block " + blockId, e);
+        }
+    }
+
+    private float[] decodeBlock(int blockId) throws IOException, DataFormatException {
+        long start = System.nanoTime();
+        int vectorsInBlock = Math.min(vectorsPerBlock, fileVectorCount - blockId * vectorsPerBlock);
+        int numValues = vectorsInBlock * dimension;
+        int rawLength = numValues * (encoding == BlockCompressedVectorFile.ENCODING_UINT8 ? 1 : 4);
+        int compressedLength = (int) (blockOffsets[blockId + 1] - blockOffsets[blockId]);
+
+        byte[][] buffers = scratch.get();
+        if (buffers == null || buffers[0].length < compressedLength || buffers[1].length < rawLength) {
+            buffers = new byte[][] {new byte[compressedLength], new byte[rawLength]};
+            scratch.set(buffers);
+        }
+        byte[] compressed = buffers[0];
+        byte[] raw = buffers[1];
+        ByteBuffer target = ByteBuffer.wrap(compressed, 0, compressedLength);
+        while (target.hasRemaining()) {
+            if (channel.read(target, blockOffsets[blockId] + target.position()) < 0) {
+                throw new IOException("Unexpected end of file reading block " + blockId);
+            }
+        }
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        int inflated = 0;
+        while (inflated < rawLength && !inflater.finished()) {
+            int n = inflater.inflate(raw, inflated, rawLength - inflated);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                break; // truncated or corrupt block, reported below
+            }
+            inflated += n;
+        }
+        if (inflated != rawLength) {
+            throw new IOException("Block " + blockId + " inflated to " + inflated + " bytes, expected " + rawLength);
+        }
+
+        float[] values = new float[numValues];
+        if (encoding == BlockCompressedVectorFile.ENCODING_UINT8) {
+            for (int i = 0; i < numValues; i++) {
+                values[i] = raw[i] & 0xff;
+            }
+        } else {
+            BlockCompressedVectorFile.unshuffle(raw, values, numValues);
+        }
+        decodeNanos.add(System.nanoTime() - start);
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return vectorCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.info("Block cache hits: {}, misses: {}, decode time: {} ms", cacheHits.sum(), cacheMisses.sum(),
+                 decodeNanos.sum() / 1_000_000);
+        channel.close();
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Total time spent reading and inflating blocks, summed over all threads
+     */
+    public long getDecodeNanos() {
+        return decodeNanos.sum();
+    }
+}
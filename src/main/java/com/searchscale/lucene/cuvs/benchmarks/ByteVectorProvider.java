@@ -0,0 +1,25 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+
+/**
+ * Vector provider that can hand out vectors as signed bytes, for indexing with KnnByteVectorField.
+ * The float methods inherited from VectorProvider return the original component values.
+ */
+public interface ByteVectorProvider extends VectorProvider {
+    /**
+     * Copy the byte encoding of the vector at the specified index into a caller-owned array of at
+     * least dimension length
+     */
+    void readInto(int index, byte[] dest) throws IOException;
+
+    /**
+     * Copy the byte encodings of the count contiguous vectors starting at start into dest[0] .. dest[count - 1]
+     */
+    default void readRange(int start, int count, byte[][] dest) throws IOException {
+        VectorProvider.checkRange(start, count, size());
+        for (int i = 0; i < count; i++) {
+            readInto(start + i, dest[i]);
+        }
+    }
+}
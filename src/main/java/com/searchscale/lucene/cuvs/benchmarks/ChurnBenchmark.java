@@ -0,0 +1,238 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.TopDocs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Update/delete churn on a built index. Every round deletes or re-indexes (updateDocument with the
+ * same vector, as a re-embedding would) a random fraction of the live ids, commits, waits for the
+ * merges this triggers, and then measures query latency and recall, the deleted-doc ratio and the
+ * merge cost of the round. Round 0 is the index before any churn. Recall is computed against the
+ * ground truth with deleted ids removed: the first n remaining neighbors of a row are exactly the
+ * true top n of the remaining documents.
+ */
+public class ChurnBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(ChurnBenchmark.class.getName());
+
+  /** Builds the document of id with vector, as the initial indexing did */
+  public interface DocumentFactory {
+    Document create(int id, float[] vector);
+  }
+
+  private final IndexWriter writer;
+  private final BenchmarkConfiguration config;
+  private final VectorProvider vectors;
+  private final VectorProvider queries;
+  private final GroundTruth groundTruth;
+  private final DocumentFactory documents;
+  private final IndexingInstrumentation instrumentation;
+  private final BitSet deleted = new BitSet();
+  private final int numDocs;
+
+  private ChurnBenchmark(IndexWriter writer, BenchmarkConfiguration config, VectorProvider vectors,
+      VectorProvider queries, GroundTruth groundTruth, DocumentFactory documents,
+      IndexingInstrumentation instrumentation) {
+    this.writer = writer;
+    this.config = config;
+    this.vectors = vectors;
+    this.queries = queries;
+    this.groundTruth = groundTruth;
+    this.documents = documents;
+    this.instrumentation = instrumentation;
+    this.numDocs = Math.min(config.numDocs, vectors.size());
+  }
+
+  /**
+   * Runs config.churnRounds rounds of churn with writer, adding the churn-* metrics. The caller
+   * commits and closes writer.
+   */
+  public static void run(IndexWriter writer, BenchmarkConfiguration config, VectorProvider vectors,
+      VectorProvider queries, GroundTruth groundTruth, DocumentFactory documents,
+      IndexingInstrumentation instrumentation, Map<String, Object> metrics) throws IOException, InterruptedException {
+    new ChurnBenchmark(writer, config, vectors, queries, groundTruth, documents, instrumentation).run(metrics);
+  }
+
+  private void run(Map<String, Object> metrics) throws IOException, InterruptedException {
+    Random random = new Random(42);
+    List<Map<String, Object>> rounds = new ArrayList<>();
+    log.info("Starting churn: {} rounds of {}% of the ids, {}% of them deleted and the rest updated",
+        config.churnRounds, config.getEffectiveChurnFraction() * 100, config.getEffectiveChurnDeleteRatio() * 100);
+    rounds.add(measure(0, new LinkedHashMap<>()));
+    for (int round = 1; round <= config.churnRounds; round++) {
+      Map<String, Object> entry = new LinkedHashMap<>();
+      int[] ids = sampleLiveIds(random, (int) (numDocs * config.getEffectiveChurnFraction()));
+      int numDeletes = (int) (ids.length * config.getEffectiveChurnDeleteRatio());
+      int mergesBefore = instrumentation.mergeCount();
+      long mergeMillisBefore = instrumentation.mergeTimeMillis();
+
+      long start = System.nanoTime();
+      apply(ids, numDeletes);
+      entry.put("apply-time-ms", (System.nanoTime() - start) / 1_000_000);
+      start = System.nanoTime();
+      writer.commit();
+      entry.put("commit-time-ms", (System.nanoTime() - start) / 1_000_000);
+      start = System.nanoTime();
+      ((ConcurrentMergeScheduler) writer.getConfig().getMergeScheduler()).sync();
+      entry.put("merge-wait-time-ms", (System.nanoTime() - start) / 1_000_000);
+      if (config.churnExpungeDeletes) {
+        start = System.nanoTime();
+        writer.forceMergeDeletes();
+        entry.put("expunge-deletes-time-ms", (System.nanoTime() - start) / 1_000_000);
+      }
+      entry.put("deletes", numDeletes);
+      entry.put("updates", ids.length - numDeletes);
+      entry.put("merges", instrumentation.mergeCount() - mergesBefore);
+      entry.put("merge-time-ms", instrumentation.mergeTimeMillis() - mergeMillisBefore);
+      rounds.add(measure(round, entry));
+    }
+    metrics.put("churn-rounds", rounds);
+    metrics.put("churn-deleted-docs", deleted.cardinality());
+  }
+
+  /**
+   * A random sample of count ids that are not deleted yet
+   */
+  private int[] sampleLiveIds(Random random, int count) {
+    int[] live = new int[numDocs - deleted.cardinality()];
+    for (int id = deleted.nextClearBit(0), i = 0; i < live.length; id = deleted.nextClearBit(id + 1)) {
+      live[i++] = id;
+    }
+    count = Math.min(count, live.length);
+    for (int i = 0; i < count; i++) {
+      int j = i + random.nextInt(live.length - i);
+      int tmp = live[i];
+      live[i] = live[j];
+      live[j] = tmp;
+    }
+    int[] sample = new int[count];
+    System.arraycopy(live, 0, sample, 0, count);
+    return sample;
+  }
+
+  /**
+   * Deletes ids[0, numDeletes) and updates the others, with numIndexThreads threads
+   */
+  private void apply(int[] ids, int numDeletes) throws IOException, InterruptedException {
+    for (int i = 0; i < numDeletes; i++) {
+      deleted.set(ids[i]);
+    }
+    int threads = Math.max(1, config.numIndexThreads);
+    AtomicInteger next = new AtomicInteger();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    for (int t = 0; t < threads; t++) {
+      pool.submit(() -> {
+        float[] vector = new float[vectors.dimension()];
+        try {
+          for (int i = next.getAndIncrement(); i < ids.length && failure.get() == null; i = next.getAndIncrement()) {
+            Term term = new Term("id", String.valueOf(ids[i]));
+            if (i < numDeletes) {
+              writer.deleteDocuments(term);
+            } else {
+              vectors.readInto(ids[i], vector);
+              writer.updateDocument(term, documents.create(ids[i], vector));
+            }
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      });
+    }
+    pool.shutdown();
+    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+    if (failure.get() != null) {
+      throw new IOException("Churn failed", failure.get());
+    }
+  }
+
+  private Map<String, Object> measure(int round, Map<String, Object> entry) throws IOException {
+    try (DirectoryReader reader = DirectoryReader.open(writer)) {
+      IndexSearcher searcher = new IndexSearcher(reader);
+      // As configured, like the other query benchmarks; INDEX_ORDER falls back to DOC_VALUES once
+      // there are deletes
+      IdResolver idResolver = IdResolver.create(reader, config.getEffectiveIdResolution());
+      int numQueries = Math.min(config.numQueriesToRun, Math.min(queries.size(), groundTruth.size()));
+      LatencyHistogram latencies = new LatencyHistogram();
+      double recallSum = 0;
+      for (int q = 0; q < numQueries; q++) {
+        float[] queryVector = queries.get(q);
+        long start = System.nanoTime();
+        TopDocs topDocs = searcher.search(
+            new KnnFloatVectorQuery(config.vectorColName, queryVector, config.getEffectiveEfSearch()),
+            config.getEffectiveEfSearch());
+        long latencyNanos = System.nanoTime() - start;
+        if (q >= config.numWarmUpQueries) {
+          latencies.record(latencyNanos);
+        }
+
+        int[] expected = liveNeighbors(groundTruth.row(q));
+        Arrays.sort(expected);
+        int count = Math.min(expected.length, topDocs.scoreDocs.length);
+        int[] ids = new int[count];
+        idResolver.resolve(topDocs.scoreDocs, count, ids);
+        int matches = 0;
+        for (int id : ids) {
+          if (Arrays.binarySearch(expected, id) >= 0) {
+            matches++;
+          }
+        }
+        recallSum += expected.length == 0 ? 1 : matches / (double) expected.length;
+      }
+
+      entry.put("round", round);
+      entry.put("live-docs", reader.numDocs());
+      entry.put("deleted-docs", reader.numDeletedDocs());
+      entry.put("deleted-ratio", reader.maxDoc() == 0 ? 0 : reader.numDeletedDocs() / (double) reader.maxDoc());
+      entry.put("segments", reader.leaves().size());
+      entry.put("id-resolution", idResolver.mode().name());
+      entry.put("recall", numQueries == 0 ? 0 : recallSum / numQueries);
+      entry.put("mean-latency", latencies.meanNanos() / 1e6);
+      latencies.addPercentiles(entry, "latency");
+      log.info("Churn round {}: {} live docs, deleted ratio {}, {} segments, recall {}, mean latency {} ms", round,
+          reader.numDocs(), String.format("%.3f", entry.get("deleted-ratio")), reader.leaves().size(),
+          String.format("%.4f", entry.get("recall")), String.format("%.3f", entry.get("mean-latency")));
+      return entry;
+    }
+  }
+
+  /**
+   * The first topK neighbors of row that are not deleted
+   */
+  private int[] liveNeighbors(GroundTruth.Row row) {
+    int[] neighbors = new int[config.topK];
+    int count = 0;
+    for (int i = 0; i < row.length() && count < neighbors.length; i++) {
+      int id = row.get(i);
+      if (!deleted.get(id)) {
+        neighbors[count++] = id;
+      }
+    }
+    if (count < neighbors.length) {
+      log.warn("Only {} live ground truth neighbors left for a query, recall is computed over them", count);
+    }
+    return count == neighbors.length ? neighbors : Arrays.copyOf(neighbors, count);
+  }
+}
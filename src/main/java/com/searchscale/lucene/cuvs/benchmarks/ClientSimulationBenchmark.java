@@ -0,0 +1,194 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TopDocs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Many concurrent clients (simulatedClients), each sending a query, waiting for its result and
+ * thinking for an exponentially distributed time (mean clientThinkTimeMs) before the next one, for
+ * clientDurationSec. Clients are virtual threads, so there can be thousands of them; the same
+ * population runs twice:
+ * <ul>
+ * <li>fixed-pool: every client submits its query to a pool of queryThreads platform threads and
+ * waits for it, so concurrency is capped by the pool and queries queue behind it
+ * <li>virtual-threads: every client runs its query on its own virtual thread, on the carrier
+ * threads of the virtual thread scheduler
+ * </ul>
+ * Latency is measured by the client, from sending to receiving the result. A JFR RecordingStream
+ * counts jdk.VirtualThreadPinned events (virtual threads that blocked while pinned to their carrier)
+ * during each run.
+ */
+public class ClientSimulationBenchmark extends QueryBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(ClientSimulationBenchmark.class.getName());
+
+  private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+  private final IndexSearcher searcher;
+
+  private ClientSimulationBenchmark(BenchmarkConfiguration config, IndexReader reader, VectorProvider queries)
+      throws IOException {
+    super(config, reader, queries);
+    this.searcher = new IndexSearcher(reader);
+  }
+
+  /**
+   * Runs the client population with both executors, adding the client-simulation-* metrics
+   */
+  public static void run(IndexReader reader, BenchmarkConfiguration config, VectorProvider queries,
+      Map<String, Object> metrics) throws IOException, InterruptedException {
+    new ClientSimulationBenchmark(config, reader, queries).run(metrics);
+  }
+
+  private void run(Map<String, Object> metrics) throws IOException, InterruptedException {
+    int poolThreads = Math.max(1, config.queryThreads);
+    log.info("Starting client simulation: {} clients, mean think time {} ms, {} s per executor",
+        config.simulatedClients, config.clientThinkTimeMs, config.getEffectiveClientDurationSec());
+    List<Map<String, Object>> runs = new ArrayList<>();
+    ExecutorService pool = Executors.newFixedThreadPool(poolThreads);
+    try {
+      Map<String, Object> fixed = runClients(pool);
+      fixed.put("executor", "fixed-pool");
+      fixed.put("threads", poolThreads);
+      runs.add(fixed);
+    } finally {
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+    }
+    Map<String, Object> virtual = runClients(null);
+    virtual.put("executor", "virtual-threads");
+    // The carrier threads of the default virtual thread scheduler
+    virtual.put("threads", Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+        Runtime.getRuntime().availableProcessors()));
+    runs.add(virtual);
+
+    for (Map<String, Object> run : runs) {
+      log.info("Client simulation {} ({} threads): {} qps, latency p50 {} ms, p99 {} ms, {} pinned events",
+          run.get("executor"), run.get("threads"), String.format("%.1f", run.get("throughput")),
+          String.format("%.3f", run.getOrDefault("latency-p50", 0.0)),
+          String.format("%.3f", run.getOrDefault("latency-p99", 0.0)), run.get("pinned-events"));
+    }
+    metrics.put("client-simulation-clients", config.simulatedClients);
+    metrics.put("client-simulation-think-time-ms", config.clientThinkTimeMs);
+    metrics.put("client-simulation-runs", runs);
+  }
+
+  /**
+   * Runs all clients for clientDurationSec, their queries on pool, or on the client's own virtual
+   * thread if pool is null
+   */
+  private Map<String, Object> runClients(ExecutorService pool) throws IOException, InterruptedException {
+    LongAdder pinnedEvents = new LongAdder();
+    LongAdder pinnedNanos = new LongAdder();
+    LongAdder sentQueries = new LongAdder();
+    long[][] clientLatencies = new long[config.simulatedClients][];
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    try (RecordingStream pinning = new RecordingStream()) {
+      pinning.enable(PINNED_EVENT).withThreshold(Duration.ZERO);
+      pinning.onEvent(PINNED_EVENT, event -> {
+        pinnedEvents.increment();
+        pinnedNanos.add(event.getDuration().toNanos());
+      });
+      pinning.startAsync();
+
+      long start = System.nanoTime();
+      long deadline = start + TimeUnit.SECONDS.toNanos(config.getEffectiveClientDurationSec());
+      try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+        for (int c = 0; c < config.simulatedClients; c++) {
+          int client = c;
+          clients.submit(() -> {
+            try {
+              clientLatencies[client] = runClient(client, pool, deadline, sentQueries);
+            } catch (Throwable t) {
+              failure.compareAndSet(null, t);
+            }
+          });
+        }
+      } // close() waits for every client
+      long elapsed = System.nanoTime() - start;
+      // Flushes the recording, so every event of the run has been delivered when stop() returns
+      pinning.stop();
+      if (failure.get() != null) {
+        throw new IOException("Simulated client failed", failure.get());
+      }
+
+      LatencyHistogram latencies = new LatencyHistogram();
+      for (long[] client : clientLatencies) {
+        for (long nanos : client) {
+          latencies.record(nanos);
+        }
+      }
+      Map<String, Object> run = new LinkedHashMap<>();
+      run.put("queries", latencies.count());
+      // Latencies skip the warm-up queries, but elapsed covers them, so the throughput counts them too
+      run.put("throughput", sentQueries.sum() / (elapsed / 1e9));
+      run.put("mean-latency", latencies.meanNanos() / 1e6);
+      latencies.addPercentiles(run, "latency");
+      run.put("pinned-events", pinnedEvents.sum());
+      run.put("pinned-time-ms", pinnedNanos.sum() / 1e6);
+      return run;
+    }
+  }
+
+  /**
+   * One client's query loop, returns the latencies of its queries after its warm-up queries and
+   * counts all of its queries in sentQueries
+   */
+  private long[] runClient(int client, ExecutorService pool, long deadline, LongAdder sentQueries)
+      throws IOException, InterruptedException, ExecutionException {
+    Random random = new Random(client);
+    long[] latencies = new long[64];
+    int count = 0;
+    // Every client starts at its own query, so they do not all send the same vectors
+    for (int q = client % numQueries, sent = 0; System.nanoTime() < deadline; q = (q + 1) % numQueries, sent++) {
+      float[] queryVector = queries.get(q);
+      long start = System.nanoTime();
+      if (pool != null) {
+        pool.submit(() -> search(queryVector)).get();
+      } else {
+        search(queryVector);
+      }
+      long nanos = System.nanoTime() - start;
+      sentQueries.increment();
+      if (sent >= config.numWarmUpQueries / config.simulatedClients) {
+        if (count == latencies.length) {
+          latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+      }
+      if (config.clientThinkTimeMs > 0) {
+        double thinkMs = -Math.log(1 - random.nextDouble()) * config.clientThinkTimeMs;
+        Thread.sleep(Duration.ofNanos((long) (thinkMs * 1e6)));
+      }
+    }
+    return Arrays.copyOf(latencies, count);
+  }
+
+  private Void search(float[] queryVector) throws IOException {
+    TopDocs topDocs = searcher.search(Util.newKnnQuery(config, queryVector), config.getEffectiveEfSearch());
+    int count = Math.min(config.topK, topDocs.scoreDocs.length);
+    idResolver.resolve(topDocs.scoreDocs, count, new int[count]);
+    return null;
+  }
+}
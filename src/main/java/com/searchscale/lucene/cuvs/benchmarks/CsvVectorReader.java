@@ -0,0 +1,390 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parallel reader for CSV datasets with a title in the second column and a vector column formatted
+ * as "[v1, v2, ...]". The file (plain, .gz or .zip) is read in large chunks that are cut at record
+ * boundaries (newlines outside quotes) on the calling thread; the chunks are parsed on a pool directly
+ * from the bytes, without per-value allocations, into flat float arrays that are handed to a sink in
+ * file order.
+ *
+ * Like Util.parseCSVFile, the first line is treated as a header and rows whose vector can not be
+ * parsed are skipped.
+ */
+public class CsvVectorReader {
+
+  private static final Logger log = LoggerFactory.getLogger(CsvVectorReader.class.getName());
+
+  private static final int CHUNK_BYTES = 8 << 20;
+  private static final int MAX_CHUNKS_IN_FLIGHT = 16;
+
+  // Powers of ten that are exact in double (up to 1e22) and in float (up to 1e10)
+  private static final double[] POWERS_OF_TEN = new double[23];
+  private static final float[] FLOAT_POWERS_OF_TEN = new float[11];
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+    for (int i = 0; i < FLOAT_POWERS_OF_TEN.length; i++) {
+      FLOAT_POWERS_OF_TEN[i] = (float) POWERS_OF_TEN[i];
+    }
+  }
+
+  // The double fraction bits below a float's 23, and their pattern halfway between two floats
+  private static final long FLOAT_ROUNDING_BITS = (1L << 29) - 1;
+  private static final long FLOAT_MIDPOINT = 1L << 28;
+
+  /** Receives numVectors consecutive vectors stored back to back in values */
+  public interface VectorSink {
+    void accept(float[] values, int numVectors, int dimension) throws IOException;
+  }
+
+  /** Vectors (and titles) parsed from one chunk */
+  private static class ParsedChunk {
+    float[] values = new float[0];
+    int numVectors;
+    int dimension = -1;
+    int skipped;
+    List<String> titles;
+  }
+
+  /**
+   * Reads up to numRows vectors (all for numRows <= 0) from column vectorColumn of csvFile into sink.
+   * Titles are added to titles unless it is null. Returns the number of vectors read.
+   */
+  public static int read(String csvFile, int vectorColumn, int numRows, List<String> titles, VectorSink sink)
+      throws IOException {
+    int threads = Runtime.getRuntime().availableProcessors();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    ZipFile zipFile = null;
+    try {
+      InputStream is;
+      if (csvFile.endsWith(".zip")) {
+        zipFile = new ZipFile(csvFile);
+        is = new BufferedInputStream(zipFile.getInputStream(zipFile.entries().nextElement()), Util.DEFAULT_BUFFER_SIZE * 16);
+      } else if (csvFile.endsWith(".gz")) {
+        is = new GZIPInputStream(new BufferedInputStream(new FileInputStream(csvFile), Util.DEFAULT_BUFFER_SIZE * 16),
+            Util.DEFAULT_BUFFER_SIZE * 16);
+      } else {
+        is = new FileInputStream(csvFile);
+      }
+      try (is) {
+        return read(is, vectorColumn, numRows, titles, sink, pool);
+      }
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to parse " + csvFile, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while parsing " + csvFile, e);
+    } finally {
+      pool.shutdownNow();
+      if (zipFile != null) {
+        zipFile.close();
+      }
+    }
+  }
+
+  private static int read(InputStream is, int vectorColumn, int numRows, List<String> titles, VectorSink sink,
+      ExecutorService pool) throws IOException, InterruptedException, ExecutionException {
+    long start = System.currentTimeMillis();
+    boolean withTitles = titles != null;
+    Deque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+    int[] state = new int[] {-1, 0, 0}; // dimension, vectors, skipped rows
+
+    byte[] buffer = new byte[CHUNK_BYTES];
+    int length = 0;
+    boolean first = true;
+    boolean eof = false;
+    while (!eof && (numRows <= 0 || state[1] < numRows)) {
+      int n = is.readNBytes(buffer, length, buffer.length - length);
+      length += n;
+      eof = length < buffer.length;
+      int cut = eof ? length : lastRecordEnd(buffer, length);
+      if (cut == 0) {
+        if (eof) {
+          break;
+        }
+        buffer = Arrays.copyOf(buffer, buffer.length * 2); // a single record larger than the buffer
+        continue;
+      }
+
+      final byte[] chunk = buffer;
+      final int chunkLength = cut;
+      final boolean skipHeader = first;
+      inFlight.add(pool.submit(() -> parseChunk(chunk, chunkLength, skipHeader, vectorColumn, withTitles)));
+      first = false;
+
+      // The partial record at the end of this chunk starts the next one
+      buffer = new byte[Math.max(CHUNK_BYTES, length - cut)];
+      System.arraycopy(chunk, cut, buffer, 0, length - cut);
+      length -= cut;
+
+      if (inFlight.size() >= MAX_CHUNKS_IN_FLIGHT) {
+        emit(inFlight.poll().get(), numRows, titles, sink, state);
+      }
+    }
+    while (!inFlight.isEmpty()) {
+      emit(inFlight.poll().get(), numRows, titles, sink, state);
+    }
+    if (state[2] > 0) {
+      log.warn("Skipped {} rows whose vector could not be parsed", state[2]);
+    }
+    log.info("Parsed {} vectors of {} dimensions in {} ms", state[1], state[0], System.currentTimeMillis() - start);
+    return state[1];
+  }
+
+  private static void emit(ParsedChunk parsed, int numRows, List<String> titles, VectorSink sink, int[] state)
+      throws IOException {
+    state[2] += parsed.skipped;
+    int count = numRows <= 0 ? parsed.numVectors : Math.min(parsed.numVectors, numRows - state[1]);
+    if (count <= 0) {
+      return;
+    }
+    if (state[0] == -1) {
+      state[0] = parsed.dimension;
+    } else if (parsed.dimension != state[0]) {
+      throw new IOException("Dimension mismatch at vector " + state[1] + ": expected " + state[0] + ", got " + parsed.dimension);
+    }
+    sink.accept(parsed.values, count, parsed.dimension);
+    if (titles != null) {
+      titles.addAll(parsed.titles.subList(0, count));
+    }
+    state[1] += count;
+  }
+
+  /**
+   * Offset just past the last newline outside quotes, or 0 if there is none. Chunks always start at a
+   * record boundary, so scanning starts outside quotes.
+   */
+  private static int lastRecordEnd(byte[] bytes, int length) {
+    boolean quoted = false;
+    int end = 0;
+    for (int i = 0; i < length; i++) {
+      byte c = bytes[i];
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == '\n' && !quoted) {
+        end = i + 1;
+      }
+    }
+    return end;
+  }
+
+  private static ParsedChunk parseChunk(byte[] bytes, int length, boolean skipHeader, int vectorColumn,
+      boolean withTitles) {
+    ParsedChunk parsed = new ParsedChunk();
+    parsed.titles = withTitles ? new ArrayList<>() : null;
+    float[] row = new float[256];
+    int recordStart = 0;
+    boolean header = skipHeader;
+    while (recordStart < length) {
+      int recordEnd = recordStart;
+      boolean quoted = false;
+      while (recordEnd < length && (bytes[recordEnd] != '\n' || quoted)) {
+        if (bytes[recordEnd] == '"') {
+          quoted = !quoted;
+        }
+        recordEnd++;
+      }
+      int next = recordEnd + 1;
+      if (recordEnd > recordStart && bytes[recordEnd - 1] == '\r') {
+        recordEnd--;
+      }
+      if (header) {
+        header = false;
+      } else if (recordEnd > recordStart) {
+        row = parseRecord(bytes, recordStart, recordEnd, vectorColumn, row, parsed);
+      }
+      recordStart = next;
+    }
+    return parsed;
+  }
+
+  /**
+   * Parses one record into parsed, returning the (possibly grown) scratch row
+   */
+  private static float[] parseRecord(byte[] bytes, int from, int to, int vectorColumn, float[] row, ParsedChunk parsed) {
+    int titleStart = -1, titleEnd = -1, vectorStart = -1, vectorEnd = -1;
+    int field = 0;
+    int fieldStart = from;
+    boolean quoted = false;
+    for (int i = from; i <= to; i++) {
+      if (i < to && bytes[i] == '"') {
+        quoted = !quoted;
+      } else if (i == to || (bytes[i] == ',' && !quoted)) {
+        if (field == 1) {
+          titleStart = fieldStart;
+          titleEnd = i;
+        }
+        if (field == vectorColumn) {
+          vectorStart = fieldStart;
+          vectorEnd = i;
+        }
+        field++;
+        fieldStart = i + 1;
+      }
+    }
+    if (vectorStart < 0 || (parsed.titles != null && titleStart < 0)) {
+      parsed.skipped++;
+      return row;
+    }
+
+    int count = 0;
+    int i = vectorStart;
+    while (i < vectorEnd) {
+      byte c = bytes[i];
+      if (c == '[' || c == ']' || c == ',' || c == '"' || c == ' ' || c == '\t') {
+        i++;
+        continue;
+      }
+      int tokenEnd = i;
+      while (tokenEnd < vectorEnd && !isSeparator(bytes[tokenEnd])) {
+        tokenEnd++;
+      }
+      if (count == row.length) {
+        row = Arrays.copyOf(row, row.length * 2);
+      }
+      try {
+        row[count++] = parseFloat(bytes, i, tokenEnd);
+      } catch (NumberFormatException e) {
+        parsed.skipped++;
+        return row;
+      }
+      i = tokenEnd;
+    }
+    if (count == 0 || (parsed.dimension != -1 && count != parsed.dimension)) {
+      parsed.skipped++;
+      return row;
+    }
+
+    parsed.dimension = count;
+    if (parsed.values.length < (parsed.numVectors + 1) * count) {
+      parsed.values = Arrays.copyOf(parsed.values, Math.max(64 * count, 2 * parsed.values.length));
+    }
+    System.arraycopy(row, 0, parsed.values, parsed.numVectors * count, count);
+    parsed.numVectors++;
+    if (parsed.titles != null) {
+      parsed.titles.add(unquote(bytes, titleStart, titleEnd));
+    }
+    return row;
+  }
+
+  private static boolean isSeparator(byte c) {
+    return c == ',' || c == ']' || c == '"' || c == ' ' || c == '\t';
+  }
+
+  private static String unquote(byte[] bytes, int from, int to) {
+    if (to - from >= 2 && bytes[from] == '"' && bytes[to - 1] == '"') {
+      return new String(bytes, from + 1, to - from - 2, StandardCharsets.UTF_8).replace("\"\"", "\"");
+    }
+    return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Parses a decimal float from bytes[from, to), correctly rounded like Float.parseFloat. Values
+   * whose digits and power of ten are exact in float or double (at most 18 significant digits, an
+   * exponent within +-22) are computed with one correctly rounded multiplication or division,
+   * without allocating. A double result that lies exactly halfway between two floats could round
+   * differently than the decimal value, so it goes to Float.parseFloat, as does anything else (more
+   * digits, extreme exponents, subnormals, NaN, Infinity, hex floats).
+   */
+  static float parseFloat(byte[] bytes, int from, int to) {
+    int i = from;
+    boolean negative = false;
+    if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i] == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int significant = 0;
+    int exponent = 0;
+    boolean digits = false;
+    boolean inexact = false; // a non-zero digit beyond the 18th was dropped
+    for (; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+      digits = true;
+      if (significant < 18) {
+        mantissa = mantissa * 10 + (bytes[i] - '0');
+        if (mantissa != 0) {
+          significant++;
+        }
+      } else {
+        inexact |= bytes[i] != '0';
+        exponent++;
+      }
+    }
+    if (i < to && bytes[i] == '.') {
+      for (i++; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+        digits = true;
+        if (significant < 18) {
+          mantissa = mantissa * 10 + (bytes[i] - '0');
+          if (mantissa != 0) {
+            significant++;
+          }
+          exponent--;
+        } else {
+          inexact |= bytes[i] != '0';
+        }
+      }
+    }
+    if (digits && i < to && (bytes[i] == 'e' || bytes[i] == 'E')) {
+      int j = i + 1;
+      boolean negativeExponent = false;
+      if (j < to && (bytes[j] == '-' || bytes[j] == '+')) {
+        negativeExponent = bytes[j] == '-';
+        j++;
+      }
+      int e = 0;
+      boolean exponentDigits = false;
+      for (; j < to && bytes[j] >= '0' && bytes[j] <= '9'; j++) {
+        exponentDigits = true;
+        e = Math.min(e * 10 + (bytes[j] - '0'), 1000);
+      }
+      if (exponentDigits) {
+        exponent += negativeExponent ? -e : e;
+        i = j;
+      }
+    }
+    if (digits && i == to && !inexact) {
+      if (mantissa == 0) {
+        return negative ? -0.0f : 0.0f;
+      }
+      if (mantissa < 1 << 24 && exponent >= -10 && exponent <= 10) {
+        // Both operands are exact floats, the one float operation rounds correctly
+        float value = exponent >= 0 ? mantissa * FLOAT_POWERS_OF_TEN[exponent]
+            : mantissa / FLOAT_POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+      }
+      if (mantissa <= 1L << 53 && exponent >= -22 && exponent <= 22) {
+        // Both operands are exact doubles, so value is the correctly rounded double of the decimal
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        // Rounding it again to float is exact unless it landed on a float midpoint (the low 29 of
+        // its 52 fraction bits are 1 followed by zeros), where the decimal may lie on either side
+        if (value >= Float.MIN_NORMAL && value <= Float.MAX_VALUE
+            && (Double.doubleToRawLongBits(value) & FLOAT_ROUNDING_BITS) != FLOAT_MIDPOINT) {
+          return (float) (negative ? -value : value);
+        }
+      }
+    }
+    return Float.parseFloat(new String(bytes, from, to - from, StandardCharsets.US_ASCII));
+  }
+}
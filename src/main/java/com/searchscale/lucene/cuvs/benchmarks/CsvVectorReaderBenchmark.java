@@ -0,0 +1,81 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the throughput of CsvVectorReader against Util.parseCSVFile (opencsv plus
+ * parseFloatArrayFromStringArray), and checks that both produce bit-identical vectors, failing the
+ * run otherwise.
+ *
+ * Usage: CsvVectorReaderBenchmark <csv file[.gz|.zip]> <indexOfVector> [numRows] [iterations]
+ */
+public class CsvVectorReaderBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2 || args.length > 4) {
+      System.err.println("Usage: CsvVectorReaderBenchmark <csv-file> <indexOfVector> [numRows] [iterations]");
+      System.exit(1);
+    }
+    BenchmarkConfiguration config = new BenchmarkConfiguration();
+    config.datasetFile = args[0];
+    config.indexOfVector = Integer.parseInt(args[1]);
+    config.numDocs = args.length >= 3 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+    int iterations = args.length >= 4 ? Integer.parseInt(args[3]) : 3;
+    double fileMB = new File(config.datasetFile).length() / 1_048_576.0;
+
+    for (int iter = 0; iter < iterations; iter++) {
+      List<float[]> expected = new ArrayList<>();
+      long start = System.nanoTime();
+      Util.parseCSVFile(config, new ArrayList<>(), expected);
+      double legacySeconds = (System.nanoTime() - start) / 1e9;
+
+      List<float[]> actual = new ArrayList<>();
+      start = System.nanoTime();
+      CsvVectorReader.read(config.datasetFile, config.indexOfVector, config.numDocs, new ArrayList<>(),
+          (values, numVectors, dimension) -> {
+            for (int i = 0; i < numVectors; i++) {
+              float[] vector = new float[dimension];
+              System.arraycopy(values, i * dimension, vector, 0, dimension);
+              actual.add(vector);
+            }
+          });
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      // Throughput is relative to the on-disk size, so it is only exact when all rows are read
+      System.out.printf("Iteration %d: opencsv %d vectors in %.2f s (%.1f MB/s), parallel %d vectors in %.2f s (%.1f MB/s), speedup %.1fx%n",
+          iter, expected.size(), legacySeconds, fileMB / legacySeconds, actual.size(), seconds, fileMB / seconds,
+          legacySeconds / seconds);
+      if (iter == 0) {
+        compare(expected, actual);
+      }
+    }
+  }
+
+  private static void compare(List<float[]> expected, List<float[]> actual) {
+    if (expected.size() != actual.size()) {
+      throw new IllegalStateException("Vector count differs: opencsv " + expected.size() + ", parallel " + actual.size());
+    }
+    long values = 0;
+    long mismatches = 0;
+    for (int i = 0; i < expected.size(); i++) {
+      float[] e = expected.get(i);
+      float[] a = actual.get(i);
+      if (e.length != a.length) {
+        throw new IllegalStateException("Dimension differs at vector " + i + ": opencsv " + e.length + ", parallel "
+            + a.length);
+      }
+      for (int j = 0; j < e.length; j++) {
+        values++;
+        if (Float.floatToIntBits(e[j]) != Float.floatToIntBits(a[j])) {
+          mismatches++;
+        }
+      }
+    }
+    if (mismatches > 0) {
+      throw new IllegalStateException(mismatches + " of " + values + " values differ from Float.parseFloat");
+    }
+    System.out.printf("Compared %d values, all identical%n", values);
+  }
+}
@@ -1,23 +1,71 @@
 package com.searchscale.lucene.cuvs.benchmarks;
 
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
 import java.util.zip.GZIPInputStream;
 
-import org.mapdb.IndexTreeList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-//TODO: The three static methods have a lot of common logic, ideally should be combined as just one.
+/**
+ * Readers for the fvecs/ivecs/bvecs (per-vector dimension prefix) and fbin/ibin (num_vectors,
+ * dimension header) formats. Uncompressed files are split into record-aligned chunks that are
+ * memory-mapped and decoded in parallel with bulk buffer views. Gzipped files are inflated through
+ * large buffers on the calling thread while the chunks are decoded on the pool.
+ */
 public class FBIvecsReader {
 
   private static final Logger log = LoggerFactory.getLogger(FBIvecsReader.class.getName());
 
+  private static final int CHUNK_BYTES = 16 << 20;
+  private static final int GZIP_BUFFER_BYTES = 1 << 20;
+  private static final int MAX_CHUNKS_IN_FLIGHT = 8; // decoding is much faster than inflating
+
+  /** Decodes one record whose data (after any dimension prefix) starts at the buffer's position */
+  private interface RecordDecoder<T> {
+    T decode(ByteBuffer record, int dimension);
+  }
+
+  private static final RecordDecoder<float[]> FLOAT_DECODER = (record, dimension) -> {
+    float[] row = new float[dimension];
+    record.asFloatBuffer().get(row);
+    record.position(record.position() + 4 * dimension);
+    return row;
+  };
+
+  private static final RecordDecoder<int[]> INT_DECODER = (record, dimension) -> {
+    int[] row = new int[dimension];
+    record.asIntBuffer().get(row);
+    record.position(record.position() + 4 * dimension);
+    return row;
+  };
+
+  private static final RecordDecoder<float[]> UNSIGNED_BYTE_DECODER = (record, dimension) -> {
+    float[] row = new float[dimension];
+    for (int i = 0; i < dimension; i++) {
+      row[i] = record.get() & 0xff;
+    }
+    return row;
+  };
+
   public static int getDimension(InputStream fc) throws IOException {
     byte[] b = fc.readNBytes(4);
     ByteBuffer bb = ByteBuffer.wrap(b);
@@ -28,240 +76,206 @@ public class FBIvecsReader {
 
   public static void readFvecs(String filePath, int numRows, List<float[]> vectors) {
     log.info("Reading {} from file: {}", numRows, filePath);
-
     try {
-      InputStream is = null;
-
-      if (filePath.endsWith("fvecs.gz")) {
-        is = new GZIPInputStream(new FileInputStream(filePath));
-      } else if (filePath.endsWith(".fvecs")) {
-        is = new FileInputStream(filePath);
-      }
-
-      int dimension = getDimension(is);
-      float[] row = new float[dimension];
-      int count = 0;
-      int rc = 0;
-
-      while (is.available() != 0) {
-        ByteBuffer bbf = ByteBuffer.wrap(is.readNBytes(4));
-        bbf.order(ByteOrder.LITTLE_ENDIAN);
-        row[rc++] = bbf.getFloat();
-
-        if (rc == dimension) {
-          vectors.add(row);
-          count += 1;
-          rc = 0;
-          row = new float[dimension];
-
-          // Skip last 4 bytes.
-          is.readNBytes(4);
-
-          if (count % 1000 == 0) {
-            System.out.print(".");
-          }
-
-          if (numRows != -1 && count == numRows) {
-            break;
-          }
-        }
-      }
-      System.out.println();
-      is.close();
-      log.info("Reading complete. Read {} vectors.", count);
+      List<float[]> rows = read(filePath, numRows, false, 4, float[][]::new, FLOAT_DECODER);
+      vectors.addAll(rows);
+      log.info("Reading complete. Read {} vectors.", rows.size());
     } catch (Exception e) {
-      e.printStackTrace();
+      log.error("Error reading fvecs file", e);
     }
   }
 
   public static ArrayList<int[]> readIvecs(String filePath, int numRows) {
     log.info("Reading {} from file: {}", numRows, filePath);
     ArrayList<int[]> vectors = new ArrayList<int[]>();
-
     try {
-      InputStream is = null;
-
-      if (filePath.endsWith("ivecs.gz")) {
-        is = new GZIPInputStream(new FileInputStream(filePath));
-      } else if (filePath.endsWith(".ivecs")) {
-        is = new FileInputStream(filePath);
-      }
-
-      int dimension = getDimension(is);
-      int[] row = new int[dimension];
-      int count = 0;
-      int rc = 0;
-
-      while (is.available() != 0) {
-
-        ByteBuffer bbf = ByteBuffer.wrap(is.readNBytes(4));
-        bbf.order(ByteOrder.LITTLE_ENDIAN);
-        row[rc++] = bbf.getInt();
-
-        if (rc == dimension) {
-          vectors.add(row);
-          count += 1;
-          rc = 0;
-          row = new int[dimension];
-
-          // Skip last 4 bytes.
-          is.readNBytes(4);
-
-          if (count % 1000 == 0) {
-            System.out.print(".");
-          }
-
-          if (numRows != -1 && count == numRows) {
-            break;
-          }
-        }
-      }
-      System.out.println();
-      is.close();
-      log.info("Reading complete. Read {} vectors.", count);
+      vectors.addAll(read(filePath, numRows, false, 4, int[][]::new, INT_DECODER));
+      log.info("Reading complete. Read {} vectors.", vectors.size());
     } catch (Exception e) {
-      e.printStackTrace();
+      log.error("Error reading ivecs file", e);
     }
     return vectors;
   }
 
   public static void readBvecs(String filePath, int numRows, List<float[]> vectors) {
     log.info("Reading {} from file: {}", numRows, filePath);
-
     try {
-      InputStream is = null;
-
-      if (filePath.endsWith("bvecs.gz")) {
-        is = new GZIPInputStream(new FileInputStream(filePath));
-      } else if (filePath.endsWith(".bvecs")) {
-        is = new FileInputStream(filePath);
-      }
-
-      int dimension = getDimension(is);
-
-      float[] row = new float[dimension];
-      int count = 0;
-      int rc = 0;
-
-      while (is.available() != 0) {
-
-        ByteBuffer bbf = ByteBuffer.wrap(is.readNBytes(1));
-        bbf.order(ByteOrder.LITTLE_ENDIAN);
-        row[rc++] = bbf.get() & 0xff;
-
-        if (rc == dimension) {
-          vectors.add(row);
-          count += 1;
-          rc = 0;
-          row = new float[dimension];
-
-          // Skip last 4 bytes.
-          is.readNBytes(4);
-
-          if (count % 1000 == 0) {
-            System.out.print(".");
-          }
-
-          if (numRows != -1 && count == numRows) {
-            break;
-          }
-        }
-      }
-      System.out.println();
-      is.close();
-      log.info("Reading complete. Read {} vectors.", count);
+      List<float[]> rows = read(filePath, numRows, false, 1, float[][]::new, UNSIGNED_BYTE_DECODER);
+      vectors.addAll(rows);
+      log.info("Reading complete. Read {} vectors.", rows.size());
     } catch (Exception e) {
-      e.printStackTrace();
+      log.error("Error reading bvecs file", e);
     }
   }
 
-  // New method to read .fbin files (format: num_vectors, dimension, then vector data)
- // Corrected readFbin method for Wiki-88M .fbin files
-public static void readFbin(String filePath, int numRows, List<float[]> vectors) {
-  log.info("Reading {} from file: {}", numRows, filePath);
-
-  try (InputStream is = new FileInputStream(filePath)) {
-    // Read num_vectors (first 4 bytes, little endian)
-    byte[] numVecBytes = is.readNBytes(4);
-    ByteBuffer numVecBuffer = ByteBuffer.wrap(numVecBytes).order(ByteOrder.LITTLE_ENDIAN);
-    int numVectors = numVecBuffer.getInt();
-
-    // Read dimension (next 4 bytes, little endian)
-    byte[] dimBytes = is.readNBytes(4);
-    ByteBuffer dimBuffer = ByteBuffer.wrap(dimBytes).order(ByteOrder.LITTLE_ENDIAN);
-    int dimension = dimBuffer.getInt();
-
-    log.info("File header - total vectors: {}, dimension: {}", numVectors, dimension);
-
-    float[] row = new float[dimension];
-    int count = 0;
-
-    while (is.available() != 0) {
-      byte[] vectorBytes = is.readNBytes(dimension * 4);
-      if (vectorBytes.length != dimension * 4) break;
-      ByteBuffer bb = ByteBuffer.wrap(vectorBytes).order(ByteOrder.LITTLE_ENDIAN);
-      for (int i = 0; i < dimension; i++) row[i] = bb.getFloat();
-      vectors.add(row.clone());
-      count++;
-      if (numRows != -1 && count == numRows) break;
-      if (count % 1000 == 0) System.out.print(".");
+  // Reads .fbin files (format: num_vectors, dimension, then vector data), e.g. Wiki-88M base files
+  public static void readFbin(String filePath, int numRows, List<float[]> vectors) {
+    log.info("Reading {} from file: {}", numRows, filePath);
+    try {
+      List<float[]> rows = read(filePath, numRows, true, 4, float[][]::new, FLOAT_DECODER);
+      vectors.addAll(rows);
+      log.info("Reading complete. Read {} vectors.", rows.size());
+    } catch (Exception e) {
+      log.error("Error reading fbin file", e);
     }
-    System.out.println();
-    log.info("Reading complete. Read {} vectors out of {} in file.", count, numVectors);
-  } catch (Exception e) {
-    log.error("Error reading fbin file", e);
   }
-}
 
-// Fixed method to read .ibin files (ground truth neighbors)
-public static ArrayList<int[]> readIbin(String filePath, int numRows) {
-  log.info("Reading {} from file: {}", numRows, filePath);
-  ArrayList<int[]> vectors = new ArrayList<int[]>();
-
-  try {
-    InputStream is = new FileInputStream(filePath);
-
-    // For .ibin ground truth files: Read num_vectors first, then dimension
-    byte[] numVecBytes = is.readNBytes(4);
-    ByteBuffer numVecBuffer = ByteBuffer.wrap(numVecBytes).order(ByteOrder.LITTLE_ENDIAN);
-    int numVectors = numVecBuffer.getInt();
-
-    byte[] dimBytes = is.readNBytes(4);
-    ByteBuffer dimBuffer = ByteBuffer.wrap(dimBytes).order(ByteOrder.LITTLE_ENDIAN);
-    int dimension = dimBuffer.getInt();
-
-    log.info("Ground truth file - total vectors: {}, dimension: {}", numVectors, dimension);
+  // Reads .ibin files (ground truth neighbors), same layout as .fbin with int values
+  public static ArrayList<int[]> readIbin(String filePath, int numRows) {
+    log.info("Reading {} from file: {}", numRows, filePath);
+    ArrayList<int[]> vectors = new ArrayList<int[]>();
+    try {
+      vectors.addAll(read(filePath, numRows, true, 4, int[][]::new, INT_DECODER));
+      log.info("Reading complete. Read {} vectors.", vectors.size());
+    } catch (Exception e) {
+      log.error("Error reading ibin file", e);
+    }
+    return vectors;
+  }
 
-    int count = 0;
-    while (is.available() != 0 && (numRows == -1 || count < numRows)) {
-      // Read dimension * 4 bytes (int values)
-      byte[] vectorBytes = is.readNBytes(dimension * 4);
-      if (vectorBytes.length != dimension * 4) {
-        break; // End of file
+  /**
+   * Reads up to numRows records (-1 or 0 for all) of a *vecs (binHeader = false) or *bin (binHeader = true) file
+   */
+  private static <T> List<T> read(String filePath, int numRows, boolean binHeader, int elementBytes,
+      IntFunction<T[]> arrayFactory, RecordDecoder<T> decoder) throws IOException, InterruptedException {
+    int threads = Runtime.getRuntime().availableProcessors();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      if (filePath.endsWith(".gz")) {
+        return readCompressed(filePath, numRows, binHeader, elementBytes, arrayFactory, decoder, pool);
       }
+      return readUncompressed(filePath, numRows, binHeader, elementBytes, arrayFactory, decoder, pool);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to decode " + filePath, e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
 
-      ByteBuffer bb = ByteBuffer.wrap(vectorBytes);
-      bb.order(ByteOrder.LITTLE_ENDIAN);
+  private static <T> List<T> readUncompressed(String filePath, int numRows, boolean binHeader, int elementBytes,
+      IntFunction<T[]> arrayFactory, RecordDecoder<T> decoder, ExecutorService pool)
+      throws IOException, InterruptedException, ExecutionException {
+    try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+      channel.read(header, 0);
+      header.flip();
+
+      int dimension;
+      long headerBytes;
+      long total;
+      if (binHeader) {
+        int numVectors = header.getInt();
+        dimension = header.getInt();
+        headerBytes = 8;
+        total = Math.min(numVectors, (channel.size() - headerBytes) / ((long) elementBytes * dimension));
+        log.info("File header - total vectors: {}, dimension: {}", numVectors, dimension);
+      } else {
+        dimension = header.getInt();
+        headerBytes = 0;
+        total = channel.size() / (4 + (long) elementBytes * dimension);
+      }
+      int prefixBytes = binHeader ? 0 : 4;
+      long recordBytes = prefixBytes + (long) elementBytes * dimension;
+      int count = (int) (numRows <= 0 ? total : Math.min(total, numRows));
+      int recordsPerChunk = (int) Math.max(1, CHUNK_BYTES / recordBytes);
+
+      T[] rows = arrayFactory.apply(count);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int start = 0; start < count; start += recordsPerChunk) {
+        final int chunkStart = start;
+        final int chunkCount = Math.min(recordsPerChunk, count - start);
+        futures.add(pool.submit(() -> {
+          ByteBuffer chunk = channel.map(MapMode.READ_ONLY, headerBytes + chunkStart * recordBytes,
+              chunkCount * recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+          decodeChunk(chunk, chunkStart, chunkCount, dimension, prefixBytes, decoder, rows);
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      return Arrays.asList(rows);
+    }
+  }
 
-      int[] row = new int[dimension];
-      for (int i = 0; i < dimension; i++) {
-        row[i] = bb.getInt();
+  private static <T> List<T> readCompressed(String filePath, int numRows, boolean binHeader, int elementBytes,
+      IntFunction<T[]> arrayFactory, RecordDecoder<T> decoder, ExecutorService pool)
+      throws IOException, InterruptedException, ExecutionException {
+    try (InputStream is = new GZIPInputStream(
+        new BufferedInputStream(new FileInputStream(filePath), GZIP_BUFFER_BYTES), GZIP_BUFFER_BYTES)) {
+      int dimension;
+      int prefixBytes;
+      byte[] firstPrefix = null;
+      if (binHeader) {
+        int numVectors = getDimension(is);
+        dimension = getDimension(is);
+        prefixBytes = 0;
+        log.info("File header - total vectors: {}, dimension: {}", numVectors, dimension);
+      } else {
+        // The first dimension prefix is part of the first record, keep it to decode that record
+        firstPrefix = is.readNBytes(4);
+        dimension = ByteBuffer.wrap(firstPrefix).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        prefixBytes = 4;
       }
+      int recordBytes = prefixBytes + elementBytes * dimension;
+      int recordsPerChunk = Math.max(1, CHUNK_BYTES / recordBytes);
+
+      // Inflate on this thread, decode chunks on the pool, keeping a bounded number of chunks in flight
+      List<T> rows = new ArrayList<>();
+      Deque<Future<T[]>> inFlight = new ArrayDeque<>();
+      int read = 0;
+      while (numRows <= 0 || read < numRows) {
+        int wanted = numRows <= 0 ? recordsPerChunk : Math.min(recordsPerChunk, numRows - read);
+        byte[] bytes = new byte[wanted * recordBytes];
+        int offset = 0;
+        if (firstPrefix != null) {
+          System.arraycopy(firstPrefix, 0, bytes, 0, firstPrefix.length);
+          offset = firstPrefix.length;
+          firstPrefix = null;
+        }
+        int length = offset + is.readNBytes(bytes, offset, bytes.length - offset);
+        int chunkCount = length / recordBytes;
+        if (chunkCount == 0) {
+          break;
+        }
+        final int chunkStart = read;
+        inFlight.add(pool.submit(() -> {
+          T[] chunkRows = arrayFactory.apply(chunkCount);
+          ByteBuffer chunk = ByteBuffer.wrap(bytes, 0, chunkCount * recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+          decodeChunk(chunk, chunkStart, chunkCount, dimension, prefixBytes, decoder, chunkRows, 0);
+          return chunkRows;
+        }));
+        read += chunkCount;
+        if (inFlight.size() >= MAX_CHUNKS_IN_FLIGHT) {
+          rows.addAll(Arrays.asList(inFlight.poll().get()));
+        }
+        if (length < bytes.length) {
+          break; // end of stream
+        }
+      }
+      while (!inFlight.isEmpty()) {
+        rows.addAll(Arrays.asList(inFlight.poll().get()));
+      }
+      return rows;
+    }
+  }
 
-      vectors.add(row);
-      count++;
+  private static <T> void decodeChunk(ByteBuffer chunk, int chunkStart, int chunkCount, int dimension,
+      int prefixBytes, RecordDecoder<T> decoder, T[] rows) throws IOException {
+    decodeChunk(chunk, chunkStart, chunkCount, dimension, prefixBytes, decoder, rows, chunkStart);
+  }
 
-      if (count % 1000 == 0) {
-        System.out.print(".");
+  private static <T> void decodeChunk(ByteBuffer chunk, int chunkStart, int chunkCount, int dimension,
+      int prefixBytes, RecordDecoder<T> decoder, T[] rows, int rowsOffset) throws IOException {
+    for (int i = 0; i < chunkCount; i++) {
+      if (prefixBytes > 0) {
+        int recordDimension = chunk.getInt();
+        if (recordDimension != dimension) {
+          throw new IOException("Dimension mismatch at vector " + (chunkStart + i) +
+              ": expected " + dimension + ", got " + recordDimension);
+        }
       }
+      rows[rowsOffset + i] = decoder.decode(chunk, dimension);
     }
-    System.out.println();
-    is.close();
-    log.info("Reading complete. Read {} vectors out of {} total.", count, numVectors);
-  } catch (Exception e) {
-    e.printStackTrace();
   }
-  return vectors;
-}
-
 }
@@ -0,0 +1,102 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compares the throughput of FBIvecsReader against the previous sequential reader, which decoded
+ * one value at a time with readNBytes(4) and looped on InputStream.available().
+ *
+ * Usage: FBIvecsReaderBenchmark <fvecs|bvecs|ivecs|fbin|ibin file[.gz]> [numRows] [iterations]
+ */
+public class FBIvecsReaderBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 3) {
+      System.err.println("Usage: FBIvecsReaderBenchmark <vectors-file> [numRows] [iterations]");
+      System.exit(1);
+    }
+    String filePath = args[0];
+    int numRows = args.length >= 2 ? Integer.parseInt(args[1]) : -1;
+    int iterations = args.length >= 3 ? Integer.parseInt(args[2]) : 3;
+    double fileMB = new File(filePath).length() / 1_048_576.0;
+
+    for (int iter = 0; iter < iterations; iter++) {
+      long start = System.nanoTime();
+      int legacyCount = readSequential(filePath, numRows);
+      double legacySeconds = (System.nanoTime() - start) / 1e9;
+
+      start = System.nanoTime();
+      int count = readParallel(filePath, numRows);
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      // Throughput is relative to the on-disk size, so it is only exact when all rows are read
+      System.out.printf("Iteration %d: sequential %d vectors in %.2f s (%.1f MB/s), parallel %d vectors in %.2f s (%.1f MB/s), speedup %.1fx%n",
+          iter, legacyCount, legacySeconds, fileMB / legacySeconds, count, seconds, fileMB / seconds,
+          legacySeconds / seconds);
+    }
+  }
+
+  private static int readParallel(String filePath, int numRows) {
+    if (filePath.contains("ivecs")) {
+      return FBIvecsReader.readIvecs(filePath, numRows).size();
+    } else if (filePath.contains("ibin")) {
+      return FBIvecsReader.readIbin(filePath, numRows).size();
+    }
+    List<float[]> vectors = new ArrayList<>();
+    if (filePath.contains("fvecs")) {
+      FBIvecsReader.readFvecs(filePath, numRows, vectors);
+    } else if (filePath.contains("bvecs")) {
+      FBIvecsReader.readBvecs(filePath, numRows, vectors);
+    } else if (filePath.contains("fbin")) {
+      FBIvecsReader.readFbin(filePath, numRows, vectors);
+    }
+    return vectors.size();
+  }
+
+  /**
+   * The previous reader's decoding loop, kept as the baseline
+   */
+  private static int readSequential(String filePath, int numRows) throws IOException {
+    boolean bin = filePath.contains("fbin") || filePath.contains("ibin");
+    int elementBytes = filePath.contains("bvecs") ? 1 : 4;
+    try (InputStream is = filePath.endsWith(".gz") ? new GZIPInputStream(new FileInputStream(filePath))
+        : new FileInputStream(filePath)) {
+      int dimension;
+      if (bin) {
+        FBIvecsReader.getDimension(is); // num_vectors
+        dimension = FBIvecsReader.getDimension(is);
+      } else {
+        dimension = FBIvecsReader.getDimension(is);
+      }
+      float[] row = new float[dimension];
+      int count = 0;
+      int rc = 0;
+      while (is.available() != 0) {
+        ByteBuffer bbf = ByteBuffer.wrap(is.readNBytes(elementBytes));
+        bbf.order(ByteOrder.LITTLE_ENDIAN);
+        row[rc++] = elementBytes == 1 ? bbf.get() & 0xff : bbf.getFloat();
+        if (rc == dimension) {
+          count += 1;
+          rc = 0;
+          row = new float[dimension];
+          if (!bin) {
+            // Skip the next vector's dimension prefix
+            is.readNBytes(4);
+          }
+          if (numRows > 0 && count == numRows) {
+            break;
+          }
+        }
+      }
+      return count;
+    }
+  }
+}
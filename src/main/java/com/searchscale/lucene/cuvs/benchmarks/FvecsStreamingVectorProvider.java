@@ -186,7 +186,8 @@ public class FvecsStreamingVectorProvider implements VectorProvider {
         // No resources to close for file-based streaming
     }
     
-    public int getDimension() {
+    @Override
+    public int dimension() {
         return dimension;
     }
 }
\ No newline at end of file
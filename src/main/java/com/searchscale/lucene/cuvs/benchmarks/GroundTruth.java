@@ -0,0 +1,241 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Ground truth neighbors, one row of neighbor ids per query. Uncompressed .ibin and .ivecs files are
+ * memory-mapped and read in place; .csv and gzipped files are parsed into a single flat int array.
+ * Rows are exposed as views, so looking up the ground truth of a query never copies it.
+ */
+public class GroundTruth implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(GroundTruth.class.getName());
+
+    private final String filePath;
+    private final Arena arena; // null when the rows are on heap
+    private final MemorySegment segment;
+    private final ValueLayout.OfInt layout;
+    private final long dataOffset; // offset of the first neighbor of the first row
+    private final long rowStride;  // bytes from one row to the next, including any ivecs prefix
+    private final int rowLength;
+    private final int numRows;
+
+    private GroundTruth(String filePath, Arena arena, MemorySegment segment, ValueLayout.OfInt layout, long dataOffset,
+                        long rowStride, int rowLength, int numRows) {
+        this.filePath = filePath;
+        this.arena = arena;
+        this.segment = segment;
+        this.layout = layout;
+        this.dataOffset = dataOffset;
+        this.rowStride = rowStride;
+        this.rowLength = rowLength;
+        this.numRows = numRows;
+    }
+
+    public static GroundTruth open(String groundTruthFile) throws IOException {
+        GroundTruth groundTruth;
+        if (groundTruthFile.endsWith("csv")) {
+            log.info("Seems like a csv groundtruth file. Reading ...");
+            groundTruth = readCsv(groundTruthFile);
+        } else if (groundTruthFile.endsWith("ivecs") || groundTruthFile.endsWith("ibin")) {
+            log.info("Seems like a{} groundtruth file. Mapping ...", groundTruthFile.endsWith("ivecs") ? " ivecs" : "n ibin");
+            groundTruth = map(groundTruthFile, groundTruthFile.endsWith("ibin"));
+        } else if (groundTruthFile.endsWith("ivecs.gz")) {
+            log.info("Seems like a compressed ivecs groundtruth file. Reading ...");
+            groundTruth = fromRows(groundTruthFile, FBIvecsReader.readIvecs(groundTruthFile, -1));
+        } else if (groundTruthFile.endsWith("ibin.gz")) {
+            log.info("Seems like a compressed ibin groundtruth file. Reading ...");
+            groundTruth = fromRows(groundTruthFile, FBIvecsReader.readIbin(groundTruthFile, -1));
+        } else {
+            throw new RuntimeException("Not parsing groundtruth file and stopping. Are you passing the correct file path?");
+        }
+        log.info("{} number of entries in the groundtruth file, {} neighbors each, {} bytes on heap.", groundTruth.size(),
+                 groundTruth.rowLength(), groundTruth.heapBytes());
+        return groundTruth;
+    }
+
+    private static GroundTruth map(String filePath, boolean binHeader) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(MapMode.READ_ONLY, 0, channel.size(), arena);
+            ValueLayout.OfInt layout = MappedVectorProvider.LE_INT;
+            if (binHeader) {
+                int numRows = segment.get(layout, 0);
+                int rowLength = segment.get(layout, 4);
+                numRows = (int) Math.min(numRows, (segment.byteSize() - 8) / (4L * rowLength));
+                return new GroundTruth(filePath, arena, segment, layout, 8, 4L * rowLength, rowLength, numRows);
+            }
+            int rowLength = segment.get(layout, 0);
+            long rowStride = 4 + 4L * rowLength;
+            return new GroundTruth(filePath, arena, segment, layout, 4, rowStride, rowLength,
+                                   (int) (segment.byteSize() / rowStride));
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    private static GroundTruth fromRows(String filePath, List<int[]> rows) throws IOException {
+        int rowLength = rows.isEmpty() ? 0 : rows.get(0).length;
+        int[] flat = new int[rows.size() * rowLength];
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).length != rowLength) {
+                throw new IOException("Ground truth row " + i + " has " + rows.get(i).length + " neighbors, expected " + rowLength);
+            }
+            System.arraycopy(rows.get(i), 0, flat, i * rowLength, rowLength);
+        }
+        return fromFlat(filePath, flat, rowLength, rows.size());
+    }
+
+    private static GroundTruth fromFlat(String filePath, int[] flat, int rowLength, int numRows) {
+        return new GroundTruth(filePath, null, MemorySegment.ofArray(flat), ValueLayout.JAVA_INT, 0, 4L * rowLength,
+                               rowLength, numRows);
+    }
+
+    /**
+     * Parses "id, id, ..." lines line by line into a flat array, without materializing the whole file
+     */
+    private static GroundTruth readCsv(String filePath) throws IOException {
+        int[] flat = new int[1 << 16];
+        int size = 0;
+        int rowLength = -1;
+        int numRows = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(filePath), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                int count = 0;
+                int i = 0;
+                while (i < line.length()) {
+                    char c = line.charAt(i);
+                    if (c != '-' && (c < '0' || c > '9')) {
+                        i++;
+                        continue;
+                    }
+                    int end = i + 1;
+                    while (end < line.length() && line.charAt(end) >= '0' && line.charAt(end) <= '9') {
+                        end++;
+                    }
+                    if (size == flat.length) {
+                        flat = Arrays.copyOf(flat, flat.length * 2);
+                    }
+                    flat[size++] = Integer.parseInt(line, i, end, 10);
+                    count++;
+                    i = end;
+                }
+                if (rowLength == -1) {
+                    rowLength = count;
+                } else if (count != rowLength) {
+                    throw new IOException("Ground truth row " + numRows + " has " + count + " neighbors, expected " + rowLength);
+                }
+                numRows++;
+            }
+        }
+        return fromFlat(filePath, Arrays.copyOf(flat, size), Math.max(rowLength, 0), numRows);
+    }
+
+    public int size() {
+        return numRows;
+    }
+
+    /**
+     * Number of neighbors per query
+     */
+    public int rowLength() {
+        return rowLength;
+    }
+
+    /**
+     * Bytes of ground truth held on the Java heap, 0 when the file is memory-mapped
+     */
+    public long heapBytes() {
+        return arena == null ? segment.byteSize() : 0;
+    }
+
+    public int get(int row, int position) {
+        return segment.get(layout, dataOffset + row * rowStride + 4L * position);
+    }
+
+    public Row row(int row) {
+        if (row < 0 || row >= numRows) {
+            throw new IndexOutOfBoundsException("Query " + row + " out of bounds [0, " + numRows + ") in " + filePath);
+        }
+        return new Row(this, row);
+    }
+
+    @Override
+    public void close() {
+        if (arena != null) {
+            arena.close();
+        }
+    }
+
+    /**
+     * The neighbors of one query, read from the ground truth storage on access
+     */
+    @JsonSerialize(using = RowSerializer.class)
+    public static final class Row {
+        private final GroundTruth groundTruth;
+        private final int row;
+
+        private Row(GroundTruth groundTruth, int row) {
+            this.groundTruth = groundTruth;
+            this.row = row;
+        }
+
+        public int length() {
+            return groundTruth.rowLength;
+        }
+
+        public int get(int position) {
+            return groundTruth.get(row, position);
+        }
+
+        /**
+         * The first n neighbors, copied (for logging)
+         */
+        public int[] head(int n) {
+            int[] head = new int[Math.min(n, length())];
+            for (int i = 0; i < head.length; i++) {
+                head[i] = get(i);
+            }
+            return head;
+        }
+    }
+
+    /**
+     * Writes a row as a JSON array of ints straight from the storage
+     */
+    static class RowSerializer extends JsonSerializer<Row> {
+        @Override
+        public void serialize(Row row, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeStartArray();
+            for (int i = 0; i < row.length(); i++) {
+                gen.writeNumber(row.get(i));
+            }
+            gen.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the hits of a query to the dataset ordinals (ids) of the documents, as configured by
+ * idResolution:
+ * <ul>
+ * <li>STORED: loads the stored id field of every hit, decompressing its stored fields block
+ * <li>DOC_VALUES: reads the id_dv numeric doc values, visiting the hits in doc id order so that
+ * every segment's doc values are iterated forward once
+ * <li>INDEX_ORDER: no lookup at all. The index is sorted by id_dv, so when the ids of every segment
+ * are a contiguous range (ingestion order preserved, no deletes) the id of a hit is the first id of
+ * its segment plus its doc id relative to the segment's docBase. The first ids are read once when
+ * the reader is opened; if a segment is not contiguous this falls back to DOC_VALUES.
+ * </ul>
+ * Resolvers are thread-safe, every call uses its own stored fields and doc values iterators.
+ */
+public abstract class IdResolver {
+
+  private static final Logger log = LoggerFactory.getLogger(IdResolver.class.getName());
+
+  public static final String ID_FIELD = "id";
+  public static final String ID_DOC_VALUES_FIELD = "id_dv";
+
+  public enum Mode {
+    STORED, DOC_VALUES, INDEX_ORDER
+  }
+
+  /**
+   * The index sort of INDEX_ORDER indexes
+   */
+  public static Sort indexSort() {
+    return new Sort(new SortField(ID_DOC_VALUES_FIELD, SortField.Type.LONG));
+  }
+
+  /**
+   * A resolver for reader in the given mode, or in DOC_VALUES mode when reader's segments do not
+   * support INDEX_ORDER
+   */
+  public static IdResolver create(IndexReader reader, Mode mode) throws IOException {
+    if (mode == Mode.STORED) {
+      return new StoredIdResolver(reader);
+    }
+    for (LeafReaderContext leaf : reader.leaves()) {
+      FieldInfo info = leaf.reader().getFieldInfos().fieldInfo(ID_DOC_VALUES_FIELD);
+      if (info == null) {
+        throw new IllegalStateException("The index has no " + ID_DOC_VALUES_FIELD + " doc values, it was not built"
+            + " with idResolution " + mode + ". Rebuild it to use idResolution " + mode);
+      }
+    }
+    if (mode == Mode.INDEX_ORDER) {
+      int[] firstIds = contiguousFirstIds(reader.leaves());
+      if (firstIds != null) {
+        return new IndexOrderIdResolver(reader, firstIds);
+      }
+      log.warn("Ids of the index segments are not contiguous ranges, resolving ids with DOC_VALUES instead of"
+          + " INDEX_ORDER");
+    }
+    return new DocValuesIdResolver(reader);
+  }
+
+  /**
+   * The first id of every leaf, or null if some leaf is not sorted by id or does not hold a
+   * contiguous range of ids
+   */
+  private static int[] contiguousFirstIds(List<LeafReaderContext> leaves) throws IOException {
+    int[] firstIds = new int[leaves.size()];
+    for (LeafReaderContext leaf : leaves) {
+      LeafReader reader = leaf.reader();
+      if (reader.hasDeletions() || !indexSort().equals(reader.getMetaData().sort())) {
+        return null;
+      }
+      if (reader.maxDoc() == 0) {
+        continue;
+      }
+      NumericDocValues values = reader.getNumericDocValues(ID_DOC_VALUES_FIELD);
+      long first = values.advanceExact(0) ? values.longValue() : -1;
+      long last = values.advanceExact(reader.maxDoc() - 1) ? values.longValue() : -1;
+      // Sorted unique ids are contiguous exactly when the range they span has maxDoc values
+      if (first < 0 || last - first != reader.maxDoc() - 1) {
+        return null;
+      }
+      firstIds[leaf.ord] = (int) first;
+    }
+    return firstIds;
+  }
+
+  protected final IndexReader reader;
+
+  protected IdResolver(IndexReader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * The mode actually used, which may be DOC_VALUES for a requested INDEX_ORDER
+   */
+  public abstract Mode mode();
+
+  /**
+   * Writes the ids of hits[0, count) into ids[0, count)
+   */
+  public abstract void resolve(ScoreDoc[] hits, int count, int[] ids) throws IOException;
+
+  private static final class StoredIdResolver extends IdResolver {
+
+    StoredIdResolver(IndexReader reader) {
+      super(reader);
+    }
+
+    @Override
+    public Mode mode() {
+      return Mode.STORED;
+    }
+
+    @Override
+    public void resolve(ScoreDoc[] hits, int count, int[] ids) throws IOException {
+      StoredFields storedFields = reader.storedFields();
+      for (int i = 0; i < count; i++) {
+        ids[i] = Integer.parseInt(storedFields.document(hits[i].doc).get(ID_FIELD));
+      }
+    }
+  }
+
+  private static final class DocValuesIdResolver extends IdResolver {
+
+    DocValuesIdResolver(IndexReader reader) {
+      super(reader);
+    }
+
+    @Override
+    public Mode mode() {
+      return Mode.DOC_VALUES;
+    }
+
+    @Override
+    public void resolve(ScoreDoc[] hits, int count, int[] ids) throws IOException {
+      // Hits come in score order, doc values iterators only move forward: visit them by doc id
+      long[] docAndIndex = new long[count];
+      for (int i = 0; i < count; i++) {
+        docAndIndex[i] = ((long) hits[i].doc << 32) | i;
+      }
+      Arrays.sort(docAndIndex);
+      List<LeafReaderContext> leaves = reader.leaves();
+      LeafReaderContext leaf = null;
+      NumericDocValues values = null;
+      for (long entry : docAndIndex) {
+        int doc = (int) (entry >>> 32);
+        if (leaf == null || doc >= leaf.docBase + leaf.reader().maxDoc()) {
+          leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+          values = leaf.reader().getNumericDocValues(ID_DOC_VALUES_FIELD);
+        }
+        if (values == null || !values.advanceExact(doc - leaf.docBase)) {
+          throw new IllegalStateException("Document " + doc + " has no " + ID_DOC_VALUES_FIELD + " value");
+        }
+        ids[(int) entry] = (int) values.longValue();
+      }
+    }
+  }
+
+  private static final class IndexOrderIdResolver extends IdResolver {
+    private final int[] docStarts;
+    private final int[] firstIds;
+
+    IndexOrderIdResolver(IndexReader reader, int[] firstIds) {
+      super(reader);
+      List<LeafReaderContext> leaves = reader.leaves();
+      this.docStarts = new int[leaves.size()];
+      for (LeafReaderContext leaf : leaves) {
+        docStarts[leaf.ord] = leaf.docBase;
+      }
+      this.firstIds = firstIds;
+    }
+
+    @Override
+    public Mode mode() {
+      return Mode.INDEX_ORDER;
+    }
+
+    @Override
+    public void resolve(ScoreDoc[] hits, int count, int[] ids) {
+      for (int i = 0; i < count; i++) {
+        int doc = hits[i].doc;
+        int leaf = docStarts.length == 1 ? 0 : ReaderUtil.subIndex(doc, docStarts);
+        ids[i] = firstIds[leaf] + doc - docStarts[leaf];
+      }
+    }
+  }
+}
@@ -0,0 +1,261 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.util.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+/**
+ * Content-addressed store of built indexes (indexCacheDir), shared by the runs of a sweep. An index
+ * lives in &lt;indexCacheDir&gt;/&lt;key&gt;, the key being a hash of every parameter that affects the
+ * built index or its build metrics: the dataset file (path, length and modification time), numDocs,
+ * the algorithm and its build parameters, flushFreq, the merge and ingestion settings, churn, the
+ * codec and the Lucene version. Runs that only differ in search parameters (efSearch, topK,
+ * queryThreads, ...) share the index, and all but the first one skip indexing.
+ *
+ * An entry is complete once its cache-entry.json exists; it holds the key parameters and the
+ * metrics of the build, which are copied into the metrics of the runs that reuse the index. A
+ * directory without it is a build that did not finish: it is rebuilt, or resumed with
+ * checkpointIntervalSec. The modification time of cache-entry.json is the entry's last use, and
+ * least recently used entries are evicted once the store exceeds indexCacheMaxGB. The store is not
+ * meant to be shared by concurrently running benchmarks.
+ */
+public class IndexCache {
+
+  private static final Logger log = LoggerFactory.getLogger(IndexCache.class.getName());
+
+  static final String ENTRY_FILE = "cache-entry.json";
+  // Bumped whenever the index layout of the benchmark changes, e.g. the fields of the documents
+  private static final int KEY_VERSION = 1;
+
+  private final Path root;
+  private final double maxGB;
+  private final Map<String, Object> params;
+  private final String key;
+  private final Path indexPath;
+
+  private IndexCache(Path root, double maxGB, Map<String, Object> params, String key) {
+    this.root = root;
+    this.maxGB = maxGB;
+    this.params = params;
+    this.key = key;
+    this.indexPath = root.resolve(key);
+  }
+
+  /**
+   * The cache entry of config's index built with codec, or null when config.indexCacheDir is not set
+   */
+  public static IndexCache open(BenchmarkConfiguration config, Codec codec) throws IOException {
+    if (config.indexCacheDir == null) {
+      return null;
+    }
+    Map<String, Object> params = keyParams(config, codec);
+    String key = hash(Util.newObjectMapper().writeValueAsString(params));
+    Path root = Path.of(config.indexCacheDir);
+    Files.createDirectories(root);
+    return new IndexCache(root, config.indexCacheMaxGB, params, key);
+  }
+
+  private static Map<String, Object> keyParams(BenchmarkConfiguration config, Codec codec) throws IOException {
+    Path dataset = Path.of(config.datasetFile);
+    Map<String, Object> params = new LinkedHashMap<>();
+    params.put("key-version", KEY_VERSION);
+    params.put("lucene-version", Version.LATEST.toString());
+    params.put("codec", codec.getName());
+    params.put("knn-vectors-format", codec.knnVectorsFormat().getName());
+    params.put("datasetFile", dataset.toAbsolutePath().normalize().toString());
+    params.put("dataset-length", Files.size(dataset));
+    params.put("dataset-modified", Files.getLastModifiedTime(dataset).toMillis());
+    params.put("indexOfVector", config.indexOfVector);
+    params.put("vectorColName", config.vectorColName);
+    params.put("numDocs", config.numDocs);
+    params.put("vectorDimension", config.vectorDimension);
+    params.put("byteVectors", config.byteVectors);
+    params.put("algoToRun", config.algoToRun.toUpperCase());
+    // Adds the id_dv field, and sorts the index by it for INDEX_ORDER
+    params.put("idResolution", config.getEffectiveIdResolution().name());
+    params.put("hnswMaxConn", config.hnswMaxConn);
+    params.put("hnswBeamWidth", config.hnswBeamWidth);
+    params.put("hnswNumMergeWorkers", config.getEffectiveHnswNumMergeWorkers());
+    if (config.isScalarQuantized()) {
+      params.put("quantizationBits", config.getEffectiveQuantizationBits());
+      params.put("quantizationConfidenceInterval", config.quantizationConfidenceInterval);
+      params.put("quantizationCompress", config.quantizationCompress);
+    }
+    if (config.isCagra()) {
+      params.put("cagraIntermediateGraphDegree", config.cagraIntermediateGraphDegree);
+      params.put("cagraGraphDegree", config.cagraGraphDegree);
+      params.put("cagraHnswLayers", config.cagraHnswLayers);
+      params.put("cuvsWriterThreads", config.cuvsWriterThreads);
+    }
+    params.put("flushFreq", config.flushFreq);
+    params.put("forceMerge", config.forceMerge);
+    params.put("enableTieredMerge", config.enableTieredMerge);
+    params.put("mergeSchedulerMaxThreads", config.mergeSchedulerMaxThreads);
+    params.put("mergeSchedulerMaxMergeCount", config.mergeSchedulerMaxMergeCount);
+    params.put("tieredMaxMergedSegmentMB", config.tieredMaxMergedSegmentMB);
+    params.put("tieredSegmentsPerTier", config.tieredSegmentsPerTier);
+    params.put("tieredFloorSegmentMB", config.tieredFloorSegmentMB);
+    params.put("deletesPctAllowed", config.deletesPctAllowed);
+    // Ingestion settings do not change the indexed documents, but they are what build sweeps measure
+    params.put("numIndexThreads", config.numIndexThreads);
+    params.put("indexingBlockSize", config.getEffectiveIndexingBlockSize());
+    params.put("batchedIndexing", config.batchedIndexing);
+    params.put("pipelinedIngestion", config.pipelinedIngestion);
+    params.put("numPartitions", config.numPartitions);
+    params.put("nrtMode", config.nrtMode);
+    params.put("nrtIndexingRate", config.nrtIndexingRate);
+    params.put("churnRounds", config.churnRounds);
+    if (config.churnRounds > 0) {
+      params.put("churnFraction", config.getEffectiveChurnFraction());
+      params.put("churnDeleteRatio", config.getEffectiveChurnDeleteRatio());
+      params.put("churnExpungeDeletes", config.churnExpungeDeletes);
+    }
+    return params;
+  }
+
+  private static String hash(String value) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest, 0, 8);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public String key() {
+    return key;
+  }
+
+  /**
+   * Directory of the index of this entry
+   */
+  public Path indexPath() {
+    return indexPath;
+  }
+
+  /**
+   * Whether the index of this entry was completely built by an earlier run
+   */
+  public boolean isComplete() {
+    return Files.exists(indexPath.resolve(ENTRY_FILE));
+  }
+
+  /**
+   * Prepares the directory of an entry that is about to be built: the leftovers of an unfinished
+   * build are deleted, unless keepPartial (a checkpointed build resumes from them)
+   */
+  public void prepareBuild(boolean keepPartial) throws IOException {
+    if (Files.exists(indexPath) && !keepPartial) {
+      log.info("Deleting the unfinished build of index cache entry {}", key);
+      FileUtils.deleteDirectory(indexPath.toFile());
+    }
+    Files.createDirectories(indexPath);
+  }
+
+  /**
+   * Marks a complete entry as used now and copies the metrics of its build into metrics
+   */
+  public void reuse(Map<String, Object> metrics) throws IOException {
+    Path entryFile = indexPath.resolve(ENTRY_FILE);
+    Map<String, Object> entry = Util.newObjectMapper().readValue(entryFile.toFile(),
+        new TypeReference<Map<String, Object>>() {});
+    @SuppressWarnings("unchecked")
+    Map<String, Object> buildMetrics = (Map<String, Object>) entry.get("metrics");
+    if (buildMetrics != null) {
+      buildMetrics.forEach(metrics::putIfAbsent);
+    }
+    Files.setLastModifiedTime(entryFile, FileTime.fromMillis(System.currentTimeMillis()));
+    metrics.put("index-cache-key", key);
+    metrics.put("index-cache-hit", true);
+    log.info("Reusing index {} from the index cache, built on {}", indexPath, entry.get("built-at"));
+  }
+
+  /**
+   * Completes the entry of a finished build, recording the metrics of the build, and evicts least
+   * recently used entries beyond the budget
+   */
+  public void store(Map<String, Object> metrics) throws IOException {
+    Map<String, Object> entry = new LinkedHashMap<>();
+    entry.put("key", key);
+    entry.put("built-at", Instant.now().toString());
+    entry.put("params", params);
+    entry.put("metrics", new LinkedHashMap<>(metrics));
+    Path tmp = indexPath.resolve(ENTRY_FILE + ".tmp");
+    Util.newObjectMapper().writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), entry);
+    Files.move(tmp, indexPath.resolve(ENTRY_FILE), StandardCopyOption.ATOMIC_MOVE);
+    metrics.put("index-cache-key", key);
+    metrics.put("index-cache-hit", false);
+    metrics.put("index-cache-evicted", evict());
+  }
+
+  private record Entry(Path path, long lastUsed, long bytes) {
+  }
+
+  /**
+   * Deletes least recently used entries, other than this one, until the store fits indexCacheMaxGB.
+   * Unfinished builds count as used when their directory was last modified. Returns the evicted keys.
+   */
+  private List<String> evict() throws IOException {
+    List<String> evicted = new ArrayList<>();
+    if (maxGB <= 0) {
+      return evicted;
+    }
+    List<Entry> entries = new ArrayList<>();
+    long totalBytes = 0;
+    try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, Files::isDirectory)) {
+      for (Path dir : dirs) {
+        Path entryFile = dir.resolve(ENTRY_FILE);
+        long lastUsed = Files.getLastModifiedTime(Files.exists(entryFile) ? entryFile : dir).toMillis();
+        long bytes = directorySize(dir);
+        totalBytes += bytes;
+        if (!dir.equals(indexPath)) {
+          entries.add(new Entry(dir, lastUsed, bytes));
+        }
+      }
+    }
+    long budget = (long) (maxGB * 1_073_741_824L);
+    entries.sort(Comparator.comparingLong(Entry::lastUsed));
+    for (Entry entry : entries) {
+      if (totalBytes <= budget) {
+        break;
+      }
+      log.info("Evicting index cache entry {} ({} GB, last used {})", entry.path().getFileName(),
+          String.format("%.2f", entry.bytes() / 1_073_741_824.0), FileTime.fromMillis(entry.lastUsed()));
+      FileUtils.deleteDirectory(entry.path().toFile());
+      totalBytes -= entry.bytes();
+      evicted.add(entry.path().getFileName().toString());
+    }
+    if (totalBytes > budget) {
+      log.warn("The index cache holds {} GB after eviction, over its {} GB budget", totalBytes / 1_073_741_824.0, maxGB);
+    }
+    return evicted;
+  }
+
+  private static long directorySize(Path dir) throws IOException {
+    try (var stream = Files.walk(dir, FileVisitOption.FOLLOW_LINKS)) {
+      return stream.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+    }
+  }
+}
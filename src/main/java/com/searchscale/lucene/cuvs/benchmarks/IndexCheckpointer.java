@@ -0,0 +1,216 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodic checkpoint commits of a block-claiming index build, so that a crashed build resumes
+ * instead of starting from doc 0. Every commit records in its user data:
+ * <ul>
+ * <li>checkpoint-watermark: every id below it is in the commit (the blocks below it are complete)
+ * <li>checkpoint-claimed: no id at or above it is in the commit, claiming blocks is paused while
+ * committing
+ * <li>checkpoint-indexing-time-ms and checkpoint-sessions: indexing time summed over all sessions
+ * <li>checkpoint-complete: true for the final commit of a finished build
+ * </ul>
+ * Ids in [watermark, claimed) belong to blocks that were being indexed during the commit and may be
+ * partially committed; a resumed build deletes them and continues from the watermark.
+ */
+public class IndexCheckpointer {
+
+  private static final Logger log = LoggerFactory.getLogger(IndexCheckpointer.class.getName());
+
+  static final String WATERMARK = "checkpoint-watermark";
+  static final String CLAIMED = "checkpoint-claimed";
+  static final String INDEXING_TIME = "checkpoint-indexing-time-ms";
+  static final String SESSIONS = "checkpoint-sessions";
+  static final String COMPLETE = "checkpoint-complete";
+
+  private final IndexWriter writer;
+  private final int resumeFrom;
+  private final long previousIndexingMillis;
+  private final int session;
+  private final long sessionStart = System.nanoTime();
+  // Claims hold the read lock, a checkpoint holds the write lock so that no block is claimed while committing
+  private final ReadWriteLock claimLock = new ReentrantReadWriteLock();
+  private final TreeMap<Integer, Integer> completedBlocks = new TreeMap<>(); // start -> end, above the watermark
+  // Daemon, so that a failed build is not kept alive by its checkpoints
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "index-checkpointer");
+    t.setDaemon(true);
+    return t;
+  });
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private int nextBlockStart;
+  private int watermark;
+  private int checkpoints;
+  private long checkpointNanos;
+
+  private IndexCheckpointer(IndexWriter writer, int resumeFrom, long previousIndexingMillis, int session) {
+    this.writer = writer;
+    this.resumeFrom = resumeFrom;
+    this.previousIndexingMillis = previousIndexingMillis;
+    this.session = session;
+    this.nextBlockStart = resumeFrom;
+    this.watermark = resumeFrom;
+  }
+
+  /**
+   * Resumes from the last checkpoint of writer's index, if any, and starts committing every
+   * intervalSeconds
+   */
+  public static IndexCheckpointer open(IndexWriter writer, int numDocs, int intervalSeconds) throws IOException {
+    Map<String, String> commitData = new HashMap<>();
+    Iterable<Map.Entry<String, String>> liveCommitData = writer.getLiveCommitData();
+    if (liveCommitData != null) {
+      liveCommitData.forEach(e -> commitData.put(e.getKey(), e.getValue()));
+    }
+
+    IndexCheckpointer checkpointer;
+    if (!commitData.containsKey(WATERMARK)) {
+      if (writer.getDocStats().maxDoc > 0) {
+        log.warn("The index already has {} documents without a checkpoint, they are kept", writer.getDocStats().maxDoc);
+      }
+      checkpointer = new IndexCheckpointer(writer, 0, 0, 1);
+    } else {
+      int watermark = Integer.parseInt(commitData.get(WATERMARK));
+      int claimed = Integer.parseInt(commitData.get(CLAIMED));
+      long indexingMillis = Long.parseLong(commitData.get(INDEXING_TIME));
+      int sessions = Integer.parseInt(commitData.get(SESSIONS));
+      if (Boolean.parseBoolean(commitData.get(COMPLETE))) {
+        log.info("The index is a complete checkpointed build of {} documents, nothing to resume", watermark);
+        watermark = Math.max(watermark, numDocs);
+      } else {
+        log.info("Resuming the build from checkpoint: ids below {} are indexed, deleting the partial ids [{}, {})",
+            watermark, watermark, claimed);
+        Term[] partial = new Term[Math.max(0, claimed - watermark)];
+        for (int i = 0; i < partial.length; i++) {
+          partial[i] = new Term("id", String.valueOf(watermark + i));
+        }
+        writer.deleteDocuments(partial);
+      }
+      checkpointer = new IndexCheckpointer(writer, watermark, indexingMillis, sessions + 1);
+    }
+    checkpointer.scheduler.scheduleWithFixedDelay(() -> {
+      try {
+        checkpointer.checkpoint();
+      } catch (Throwable t) {
+        checkpointer.failure.compareAndSet(null, t);
+      }
+    }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    return checkpointer;
+  }
+
+  /**
+   * First doc id this session indexes
+   */
+  public int resumeFrom() {
+    return resumeFrom;
+  }
+
+  /**
+   * Claims the next block of blockSize ids, returns its start
+   */
+  public int claim(int blockSize) {
+    claimLock.readLock().lock();
+    try {
+      synchronized (this) {
+        int start = nextBlockStart;
+        nextBlockStart += blockSize;
+        return start;
+      }
+    } finally {
+      claimLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Marks the claimed ids [start, start + count) as added to the writer
+   */
+  public synchronized void completed(int start, int count) {
+    completedBlocks.put(start, start + count);
+    Map.Entry<Integer, Integer> first;
+    while ((first = completedBlocks.firstEntry()) != null && first.getKey() == watermark) {
+      watermark = first.getValue();
+      completedBlocks.pollFirstEntry();
+    }
+  }
+
+  /**
+   * Commits the ids below the watermark, run every intervalSeconds
+   */
+  void checkpoint() throws IOException {
+    claimLock.writeLock().lock();
+    try {
+      long start = System.nanoTime();
+      int committedWatermark;
+      int claimed;
+      synchronized (this) {
+        committedWatermark = watermark;
+        claimed = nextBlockStart;
+      }
+      writer.setLiveCommitData(commitData(committedWatermark, claimed, false).entrySet());
+      writer.commit();
+      long nanos = System.nanoTime() - start;
+      synchronized (this) {
+        checkpoints++;
+        checkpointNanos += nanos;
+      }
+      log.info("Checkpoint committed in {} ms: ids below {} are durable", nanos / 1_000_000, committedWatermark);
+    } finally {
+      claimLock.writeLock().unlock();
+    }
+  }
+
+  private Map<String, String> commitData(int committedWatermark, int claimed, boolean complete) {
+    Map<String, String> data = new HashMap<>();
+    data.put(WATERMARK, String.valueOf(committedWatermark));
+    data.put(CLAIMED, String.valueOf(claimed));
+    data.put(INDEXING_TIME, String.valueOf(indexingMillis()));
+    data.put(SESSIONS, String.valueOf(session));
+    data.put(COMPLETE, String.valueOf(complete));
+    return data;
+  }
+
+  /**
+   * Indexing time of all sessions up to now
+   */
+  public long indexingMillis() {
+    return previousIndexingMillis + (System.nanoTime() - sessionStart) / 1_000_000;
+  }
+
+  /**
+   * Stops the periodic checkpoints and marks the build as complete in the data of the writer's
+   * next commit. Throws the failure of a checkpoint, if any.
+   */
+  public void finish(int numDocs) throws IOException, InterruptedException {
+    scheduler.shutdown();
+    scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+    Throwable t = failure.get();
+    if (t != null) {
+      throw new IOException("Checkpoint commit failed", t);
+    }
+    writer.setLiveCommitData(commitData(numDocs, numDocs, true).entrySet());
+  }
+
+  public void addMetrics(Map<String, Object> metrics) {
+    metrics.put("checkpoint-count", checkpoints);
+    metrics.put("checkpoint-total-time", checkpointNanos / 1_000_000);
+    metrics.put("resumed-from-doc", resumeFrom);
+    metrics.put("indexing-sessions", session);
+    metrics.put("previous-sessions-indexing-time", previousIndexingMillis);
+  }
+}
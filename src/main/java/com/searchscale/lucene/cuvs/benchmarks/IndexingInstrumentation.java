@@ -0,0 +1,340 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.codecs.KnnFieldVectorsWriter;
+import org.apache.lucene.codecs.KnnVectorsWriter;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FilterMergePolicy;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeState;
+import org.apache.lucene.index.MergeTrigger;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Sorter;
+import org.apache.lucene.util.InfoStream;
+
+/**
+ * Records every flush and every merge of the index build. Flushes are parsed from the DWPT messages
+ * of the IndexWriter InfoStream (doc count, RAM used, flushed size, duration), merges are timed by
+ * a ConcurrentMergeScheduler subclass, tagged with their trigger by a wrapping MergePolicy, and the
+ * time spent writing and merging vectors (including building the merged HNSW graph) is measured by
+ * wrapping the segment's KnnVectorsWriter. The records end up in results.json, so the cost of
+ * flushFreq-sized flushes can be compared with the cost of merges.
+ */
+public class IndexingInstrumentation {
+
+  private static final Pattern FLUSH_START = Pattern.compile("flush postings as segment (\\S+) numDocs=(\\d+)");
+  private static final Pattern FLUSHED = Pattern.compile(
+      "flushed: segment=(\\S+) ramUsed=([\\d,.]+) MB newFlushedSize=([\\d,.]+) MB");
+  private static final Pattern FLUSH_TIME = Pattern.compile("flush time ([\\d.]+) ms");
+
+  private final InfoStream delegate; // null when the InfoStream is not printed
+  private final List<Map<String, Object>> flushes = new ArrayList<>();
+  private final List<Map<String, Object>> merges = new ArrayList<>();
+  // The flush each thread is in the middle of, DWPT messages of one flush come from one thread
+  private final Map<Thread, Map<String, Object>> pendingFlushes = new ConcurrentHashMap<>();
+  // Weak, as merges that never run (aborted, or dropped when the writer closes) are never taken out;
+  // OneMerge keeps identity equals, so this is an identity map
+  private final Map<MergePolicy.OneMerge, String> mergeTriggers = new WeakHashMap<>();
+  // Vector merge time of the merge each merge thread is running, vectors are merged on that thread
+  private final Map<Thread, Long> vectorMergeNanos = new ConcurrentHashMap<>();
+
+  /**
+   * @param delegate InfoStream that receives every message as well, or null
+   */
+  public IndexingInstrumentation(InfoStream delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Sets the InfoStream, merge scheduler and (wrapped) merge policy of config. Every writer needs its
+   * own merge scheduler, so this is called once per IndexWriterConfig.
+   */
+  public void apply(IndexWriterConfig config) {
+    config.setInfoStream(new RecordingInfoStream());
+    config.setMergeScheduler(new TimedMergeScheduler());
+    config.setMergePolicy(new TriggerRecordingMergePolicy(config.getMergePolicy()));
+  }
+
+  /**
+   * Wraps the vectors writer of a segment to time its flush and its merges
+   */
+  public KnnVectorsWriter wrap(KnnVectorsWriter writer) {
+    return new TimedKnnVectorsWriter(writer);
+  }
+
+  /**
+   * The number of flushes and merges recorded at some point, so that a later phase can be reported
+   * on its own
+   */
+  public record Mark(int flushes, int merges) {
+  }
+
+  public synchronized Mark mark() {
+    return new Mark(flushes.size(), merges.size());
+  }
+
+  /**
+   * Adds flushes, merges and their totals to metrics
+   */
+  public void addMetrics(Map<String, Object> metrics) {
+    addMetrics(metrics, "", new Mark(0, 0));
+  }
+
+  /**
+   * Adds the flushes and merges recorded since mark, and their totals, to metrics, under keys
+   * starting with prefix
+   */
+  public synchronized void addMetrics(Map<String, Object> metrics, String prefix, Mark since) {
+    // Copies, writers of a later phase (churn) keep recording into these lists
+    List<Map<String, Object>> flushes = new ArrayList<>(this.flushes.subList(since.flushes(), this.flushes.size()));
+    List<Map<String, Object>> merges = new ArrayList<>(this.merges.subList(since.merges(), this.merges.size()));
+    long flushMillis = 0;
+    long flushDocs = 0;
+    for (Map<String, Object> flush : flushes) {
+      flushMillis += ((Number) flush.getOrDefault("time-ms", 0)).longValue();
+      flushDocs += ((Number) flush.getOrDefault("docs", 0)).longValue();
+    }
+    long mergeMillis = 0;
+    long vectorMergeMillis = 0;
+    for (Map<String, Object> merge : merges) {
+      mergeMillis += (Long) merge.get("time-ms");
+      vectorMergeMillis += ((Number) merge.getOrDefault("vector-merge-time-ms", 0L)).longValue();
+    }
+    // Flushes and merges run concurrently, so the totals can exceed the indexing wall time
+    metrics.put(prefix + "flushes", flushes);
+    metrics.put(prefix + "flush-count", flushes.size());
+    metrics.put(prefix + "flush-docs", flushDocs);
+    metrics.put(prefix + "flush-total-time", flushMillis);
+    metrics.put(prefix + "merges", merges);
+    metrics.put(prefix + "merge-count", merges.size());
+    metrics.put(prefix + "merge-total-time", mergeMillis);
+    metrics.put(prefix + "vector-merge-total-time", vectorMergeMillis);
+  }
+
+  /**
+   * Number of merges recorded so far
+   */
+  public synchronized int mergeCount() {
+    return merges.size();
+  }
+
+  /**
+   * Total duration of the merges recorded so far
+   */
+  public synchronized long mergeTimeMillis() {
+    long millis = 0;
+    for (Map<String, Object> merge : merges) {
+      millis += (Long) merge.get("time-ms");
+    }
+    return millis;
+  }
+
+  private synchronized void recordFlush(Map<String, Object> flush) {
+    flushes.add(flush);
+  }
+
+  private synchronized void recordMerge(Map<String, Object> merge) {
+    merges.add(merge);
+  }
+
+  private synchronized void recordTrigger(MergePolicy.MergeSpecification spec, String trigger) {
+    if (spec != null) {
+      for (MergePolicy.OneMerge merge : spec.merges) {
+        mergeTriggers.put(merge, trigger);
+      }
+    }
+  }
+
+  private synchronized String takeTrigger(MergePolicy.OneMerge merge) {
+    String trigger = mergeTriggers.remove(merge);
+    return trigger != null ? trigger : "unknown";
+  }
+
+  private static double parseMB(String value) {
+    return Double.parseDouble(value.replace(",", ""));
+  }
+
+  private final class RecordingInfoStream extends InfoStream {
+
+    @Override
+    public void message(String component, String message) {
+      if ("DWPT".equals(component)) {
+        parseFlushMessage(message);
+      }
+      if (delegate != null && delegate.isEnabled(component)) {
+        delegate.message(component, message);
+      }
+    }
+
+    private void parseFlushMessage(String message) {
+      Thread thread = Thread.currentThread();
+      Matcher m;
+      if ((m = FLUSH_START.matcher(message)).find()) {
+        Map<String, Object> flush = new LinkedHashMap<>();
+        flush.put("segment", m.group(1));
+        flush.put("docs", Integer.parseInt(m.group(2)));
+        flush.put("thread", thread.getName());
+        pendingFlushes.put(thread, flush);
+      } else if ((m = FLUSHED.matcher(message)).find()) {
+        Map<String, Object> flush = pendingFlushes.get(thread);
+        if (flush != null) {
+          flush.put("ram-used-mb", parseMB(m.group(2)));
+          flush.put("size-mb", parseMB(m.group(3)));
+        }
+      } else if ((m = FLUSH_TIME.matcher(message)).find()) {
+        Map<String, Object> flush = pendingFlushes.remove(thread);
+        if (flush != null) {
+          flush.put("time-ms", (long) Double.parseDouble(m.group(1)));
+          recordFlush(flush);
+        }
+      }
+    }
+
+    @Override
+    public boolean isEnabled(String component) {
+      return "DWPT".equals(component) || (delegate != null && delegate.isEnabled(component));
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (delegate != null) {
+        delegate.close();
+      }
+    }
+  }
+
+  private final class TimedMergeScheduler extends ConcurrentMergeScheduler {
+
+    @Override
+    protected void doMerge(MergeSource mergeSource, MergePolicy.OneMerge merge) throws IOException {
+      long inputBytes = merge.totalBytesSize();
+      long start = System.nanoTime();
+      vectorMergeNanos.put(Thread.currentThread(), 0L);
+      try {
+        super.doMerge(mergeSource, merge);
+      } finally {
+        long nanos = System.nanoTime() - start;
+        Map<String, Object> record = new LinkedHashMap<>();
+        SegmentCommitInfo info = merge.getMergeInfo();
+        String segment = info != null ? info.info.name : null;
+        record.put("segment", segment);
+        record.put("trigger", takeTrigger(merge));
+        record.put("input-segments", merge.segments.size());
+        record.put("docs", merge.totalNumDocs());
+        record.put("input-size-mb", inputBytes / 1_048_576.0);
+        if (info != null && !merge.isAborted()) {
+          record.put("size-mb", info.sizeInBytes() / 1_048_576.0);
+        }
+        record.put("time-ms", nanos / 1_000_000);
+        Long vectorNanos = vectorMergeNanos.remove(Thread.currentThread());
+        if (vectorNanos != null && vectorNanos > 0) {
+          record.put("vector-merge-time-ms", vectorNanos / 1_000_000);
+        }
+        record.put("aborted", merge.isAborted());
+        recordMerge(record);
+      }
+    }
+  }
+
+  private final class TriggerRecordingMergePolicy extends FilterMergePolicy {
+
+    TriggerRecordingMergePolicy(MergePolicy in) {
+      super(in);
+    }
+
+    @Override
+    public MergeSpecification findMerges(MergeTrigger mergeTrigger, SegmentInfos segmentInfos,
+        MergeContext mergeContext) throws IOException {
+      MergeSpecification spec = in.findMerges(mergeTrigger, segmentInfos, mergeContext);
+      recordTrigger(spec, mergeTrigger.name());
+      return spec;
+    }
+
+    @Override
+    public MergeSpecification findForcedMerges(SegmentInfos segmentInfos, int maxSegmentCount,
+        Map<SegmentCommitInfo, Boolean> segmentsToMerge, MergeContext mergeContext) throws IOException {
+      MergeSpecification spec = in.findForcedMerges(segmentInfos, maxSegmentCount, segmentsToMerge, mergeContext);
+      recordTrigger(spec, "FORCE_MERGE");
+      return spec;
+    }
+
+    @Override
+    public MergeSpecification findForcedDeletesMerges(SegmentInfos segmentInfos, MergeContext mergeContext)
+        throws IOException {
+      MergeSpecification spec = in.findForcedDeletesMerges(segmentInfos, mergeContext);
+      recordTrigger(spec, "FORCE_MERGE_DELETES");
+      return spec;
+    }
+
+    @Override
+    public MergeSpecification findFullFlushMerges(MergeTrigger mergeTrigger, SegmentInfos segmentInfos,
+        MergeContext mergeContext) throws IOException {
+      MergeSpecification spec = in.findFullFlushMerges(mergeTrigger, segmentInfos, mergeContext);
+      recordTrigger(spec, mergeTrigger.name());
+      return spec;
+    }
+  }
+
+  /**
+   * Delegates to the format's writer, adding the time spent in flush to the flush running on the
+   * calling thread, and the time spent merging each vector field (for HNSW formats this is where the
+   * merged graph is built) to the merge running on the calling thread
+   */
+  private final class TimedKnnVectorsWriter extends KnnVectorsWriter {
+    private final KnnVectorsWriter in;
+
+    TimedKnnVectorsWriter(KnnVectorsWriter in) {
+      this.in = in;
+    }
+
+    @Override
+    public KnnFieldVectorsWriter<?> addField(FieldInfo fieldInfo) throws IOException {
+      return in.addField(fieldInfo);
+    }
+
+    @Override
+    public void flush(int maxDoc, Sorter.DocMap sortMap) throws IOException {
+      long start = System.nanoTime();
+      in.flush(maxDoc, sortMap);
+      Map<String, Object> flush = pendingFlushes.get(Thread.currentThread());
+      if (flush != null) {
+        flush.put("vector-flush-time-ms", (System.nanoTime() - start) / 1_000_000);
+      }
+    }
+
+    @Override
+    public void mergeOneField(FieldInfo fieldInfo, MergeState mergeState) throws IOException {
+      long start = System.nanoTime();
+      in.mergeOneField(fieldInfo, mergeState);
+      // Only merges run by the merge scheduler are recorded, e.g. not addIndexes(CodecReader...)
+      vectorMergeNanos.computeIfPresent(Thread.currentThread(), (thread, nanos) -> nanos + System.nanoTime() - start);
+    }
+
+    @Override
+    public void finish() throws IOException {
+      in.finish();
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return in.ramBytesUsed();
+    }
+  }
+}
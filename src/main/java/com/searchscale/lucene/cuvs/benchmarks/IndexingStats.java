@@ -0,0 +1,89 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-thread indexing counters: documents, time spent in indexing calls and bytes allocated by the
+ * thread during those calls (from com.sun.management.ThreadMXBean). Comparing allocations per doc
+ * and docs/sec between indexing modes shows how much of the indexing time goes to building
+ * documents rather than to HNSW graph construction.
+ */
+public class IndexingStats {
+
+  /** An indexing call to measure */
+  public interface IndexingTask {
+    void run() throws IOException;
+  }
+
+  private static final class Counters {
+    long docs;
+    long nanos;
+    long allocatedBytes;
+  }
+
+  private final com.sun.management.ThreadMXBean threads;
+  private final boolean allocationsSupported;
+  private final Map<String, Counters> perThread = new ConcurrentHashMap<>();
+
+  public IndexingStats() {
+    this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    boolean supported = threads.isThreadAllocatedMemorySupported();
+    if (supported && !threads.isThreadAllocatedMemoryEnabled()) {
+      threads.setThreadAllocatedMemoryEnabled(true);
+    }
+    this.allocationsSupported = supported;
+  }
+
+  /**
+   * Runs task on the calling thread, attributing docs documents and the time and allocations of
+   * the call to the thread
+   */
+  public void measure(int docs, IndexingTask task) throws IOException {
+    long allocatedBefore = allocationsSupported ? threads.getCurrentThreadAllocatedBytes() : 0;
+    long start = System.nanoTime();
+    task.run();
+    long nanos = System.nanoTime() - start;
+    long allocated = allocationsSupported ? threads.getCurrentThreadAllocatedBytes() - allocatedBefore : 0;
+
+    // Every thread only ever updates its own counters
+    Counters counters = perThread.computeIfAbsent(Thread.currentThread().getName(), name -> new Counters());
+    counters.docs += docs;
+    counters.nanos += nanos;
+    counters.allocatedBytes += allocated;
+  }
+
+  /**
+   * Adds indexing-threads (one entry per thread) and the overall allocation rate to metrics
+   */
+  public void addMetrics(Map<String, Object> metrics) {
+    List<Map<String, Object>> threadMetrics = new ArrayList<>();
+    long totalDocs = 0;
+    long totalAllocated = 0;
+    for (Map.Entry<String, Counters> entry : new TreeMap<>(perThread).entrySet()) {
+      Counters counters = entry.getValue();
+      Map<String, Object> thread = new LinkedHashMap<>();
+      thread.put("thread", entry.getKey());
+      thread.put("docs", counters.docs);
+      thread.put("time-ms", counters.nanos / 1_000_000);
+      thread.put("docs-per-sec", counters.nanos == 0 ? 0 : counters.docs / (counters.nanos / 1e9));
+      if (allocationsSupported) {
+        thread.put("allocated-mb", counters.allocatedBytes / 1_048_576.0);
+        thread.put("allocated-bytes-per-doc", counters.docs == 0 ? 0 : counters.allocatedBytes / counters.docs);
+      }
+      threadMetrics.add(thread);
+      totalDocs += counters.docs;
+      totalAllocated += counters.allocatedBytes;
+    }
+    metrics.put("indexing-threads", threadMetrics);
+    if (allocationsSupported && totalDocs > 0) {
+      metrics.put("indexing-allocated-bytes-per-doc", totalAllocated / totalDocs);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Producer/consumer ingestion: reader threads prefetch consecutive blocks of vectors into a bounded
+ * ring of reusable buffers, and indexing threads consume the filled blocks. Reading and indexing
+ * overlap, and the stall times on both sides show which of the two is the bottleneck: readers wait
+ * for free buffers when indexing is slower, indexers wait for filled blocks when reading is slower.
+ */
+public class IngestionPipeline {
+
+  private static final Logger log = LoggerFactory.getLogger(IngestionPipeline.class.getName());
+
+  /** Indexes vectors[0, count), which hold the vectors of doc ids [start, start + count) */
+  public interface BlockConsumer {
+    void accept(float[][] vectors, int start, int count) throws IOException;
+  }
+
+  /** Waiting and queue statistics of one run */
+  public record Stats(long readerStallNanos, long indexerStallNanos, double meanQueueDepth, int maxQueueDepth,
+      long blocks) {
+  }
+
+  private static final class Block {
+    final float[][] vectors;
+    int start;
+    int count;
+
+    Block(int blockSize, int dimension) {
+      this.vectors = new float[blockSize][dimension];
+    }
+  }
+
+  private static final Block END = new Block(0, 0);
+
+  /**
+   * Feeds vectors [0, numDocs) of provider to consumer in blocks of blockSize, with readerThreads
+   * readers, indexThreads consumers and ringSize reusable buffers
+   */
+  public static Stats run(VectorProvider provider, int numDocs, int blockSize, int dimension, int readerThreads,
+      int indexThreads, int ringSize, BlockConsumer consumer) throws IOException, InterruptedException {
+    BlockingQueue<Block> free = new ArrayBlockingQueue<>(ringSize);
+    BlockingQueue<Block> filled = new ArrayBlockingQueue<>(ringSize + indexThreads);
+    for (int i = 0; i < ringSize; i++) {
+      free.add(new Block(blockSize, dimension));
+    }
+    AtomicInteger nextBlockStart = new AtomicInteger(0);
+    AtomicInteger activeReaders = new AtomicInteger(readerThreads);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    LongAdder readerStallNanos = new LongAdder();
+    LongAdder indexerStallNanos = new LongAdder();
+    LongAdder depthSum = new LongAdder();
+    LongAdder blocks = new LongAdder();
+    LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+    log.info("Starting pipelined ingestion with {} reader threads, {} indexing threads and {} buffers of {} vectors",
+        readerThreads, indexThreads, ringSize, blockSize);
+    ExecutorService pool = Executors.newFixedThreadPool(readerThreads + indexThreads);
+    for (int i = 0; i < readerThreads; i++) {
+      pool.submit(() -> {
+        try {
+          while (failure.get() == null) {
+            int start = nextBlockStart.getAndAdd(blockSize);
+            if (start >= numDocs) {
+              break;
+            }
+            long waitStart = System.nanoTime();
+            Block block = free.take();
+            readerStallNanos.add(System.nanoTime() - waitStart);
+            block.start = start;
+            block.count = Math.min(blockSize, numDocs - start);
+            provider.readRange(block.start, block.count, block.vectors);
+            filled.put(block);
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        } finally {
+          if (activeReaders.decrementAndGet() == 0) {
+            // The last reader tells every indexer to stop once the filled blocks are drained
+            for (int j = 0; j < indexThreads; j++) {
+              filled.add(END);
+            }
+          }
+        }
+      });
+    }
+    for (int i = 0; i < indexThreads; i++) {
+      pool.submit(() -> {
+        try {
+          while (true) {
+            long waitStart = System.nanoTime();
+            Block block = filled.take();
+            indexerStallNanos.add(System.nanoTime() - waitStart);
+            if (block == END) {
+              break;
+            }
+            int depth = filled.size();
+            depthSum.add(depth);
+            maxDepth.accumulate(depth);
+            blocks.increment();
+            try {
+              if (failure.get() == null) {
+                consumer.accept(block.vectors, block.start, block.count);
+              }
+            } catch (Throwable t) {
+              // Keep draining after a failure, so that no reader waits for a buffer forever
+              failure.compareAndSet(null, t);
+            }
+            free.put(block);
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        }
+      });
+    }
+    pool.shutdown();
+    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+
+    Throwable t = failure.get();
+    if (t instanceof IOException e) {
+      throw e;
+    } else if (t instanceof RuntimeException e) {
+      throw e;
+    } else if (t != null) {
+      throw new IOException("Pipelined ingestion failed", t);
+    }
+
+    long count = blocks.sum();
+    Stats stats = new Stats(readerStallNanos.sum(), indexerStallNanos.sum(), count == 0 ? 0 : depthSum.sum() / (double) count,
+        (int) maxDepth.get(), count);
+    log.info("Pipelined ingestion done: {} blocks, reader stall {} ms, indexer stall {} ms, mean queue depth {}, max queue depth {}",
+        stats.blocks(), stats.readerStallNanos() / 1_000_000, stats.indexerStallNanos() / 1_000_000,
+        String.format("%.2f", stats.meanQueueDepth()), stats.maxQueueDepth());
+    return stats;
+  }
+}
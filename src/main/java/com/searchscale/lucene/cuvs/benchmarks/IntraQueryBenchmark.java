@@ -0,0 +1,118 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Intra-query parallelism: an IndexSearcher with an executor searches the segments of one query
+ * concurrently. The kNN queries search the HNSW graph of every segment as a separate task when
+ * they are rewritten, and the slices (groups of segments, searchSliceMaxDocs and
+ * searchSliceMaxSegments) are the tasks of the collection that follows.
+ *
+ * The benchmark runs the queries one at a time, so the latency is that of a single query on an
+ * otherwise idle machine, first without an executor and then with 2, 4, ... up to
+ * intraQueryThreads threads. Every level reports the segment and slice count with the latency
+ * percentiles, so runs over indexes with different segment counts (flushFreq, merges) give latency
+ * versus segment count per thread count.
+ */
+public class IntraQueryBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(IntraQueryBenchmark.class.getName());
+
+  /**
+   * A searcher of reader that runs its per-segment tasks on executor (none if null), with the
+   * configured slices
+   */
+  public static IndexSearcher newSearcher(IndexReader reader, ExecutorService executor,
+      BenchmarkConfiguration config) {
+    if (executor == null) {
+      return new IndexSearcher(reader);
+    }
+    int maxDocs = config.getEffectiveSearchSliceMaxDocs();
+    int maxSegments = config.getEffectiveSearchSliceMaxSegments();
+    return new IndexSearcher(reader, executor) {
+      @Override
+      protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+        return slices(leaves, maxDocs, maxSegments, false);
+      }
+    };
+  }
+
+  /**
+   * Measures single-query latency at every intra-query thread count, adding the intra-query-*
+   * metrics
+   */
+  public static void run(IndexReader reader, BenchmarkConfiguration config, VectorProvider queries,
+      Map<String, Object> metrics) throws IOException, InterruptedException {
+    List<Integer> threadCounts = new ArrayList<>();
+    for (int threads = 1; threads < config.intraQueryThreads; threads *= 2) {
+      threadCounts.add(threads);
+    }
+    threadCounts.add(config.intraQueryThreads);
+    log.info("Starting intra-query benchmark over {} segments with {} threads", reader.leaves().size(), threadCounts);
+
+    List<Map<String, Object>> levels = new ArrayList<>();
+    double baselineP50 = 0;
+    for (int threads : threadCounts) {
+      // 1 thread is the plain searcher, the query runs on the calling thread
+      ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+      try {
+        IndexSearcher searcher = newSearcher(reader, executor, config);
+        LatencyHistogram latencies = measure(searcher, config, queries);
+        Map<String, Object> level = new LinkedHashMap<>();
+        level.put("threads", threads);
+        level.put("segments", reader.leaves().size());
+        level.put("slices", searcher.getSlices().length);
+        level.put("queries", latencies.count());
+        level.put("mean-latency", latencies.meanNanos() / 1e6);
+        latencies.addPercentiles(level, "latency");
+        double p50 = latencies.valueAtPercentile(50) / 1e6;
+        if (levels.isEmpty()) {
+          baselineP50 = p50;
+        }
+        level.put("p50-speedup", p50 > 0 ? baselineP50 / p50 : 0);
+        levels.add(level);
+        log.info("Intra-query threads {}: {} slices, latency p50 {} ms, p99 {} ms", threads, level.get("slices"),
+            String.format("%.3f", p50), String.format("%.3f", level.get("latency-p99")));
+      } finally {
+        if (executor != null) {
+          executor.shutdown();
+          executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        }
+      }
+    }
+    metrics.put("intra-query-segment-count", reader.leaves().size());
+    metrics.put("intra-query-levels", levels);
+  }
+
+  /**
+   * Runs the queries sequentially, recording the latency of those after the warm-up queries
+   */
+  private static LatencyHistogram measure(IndexSearcher searcher, BenchmarkConfiguration config,
+      VectorProvider queries) throws IOException {
+    LatencyHistogram latencies = new LatencyHistogram();
+    int numQueries = QueryBenchmark.numQueries(config, queries);
+    for (int q = 0; q < numQueries; q++) {
+      float[] queryVector = queries.get(q);
+      long start = System.nanoTime();
+      searcher.search(Util.newKnnQuery(config, queryVector), config.getEffectiveEfSearch());
+      long nanos = System.nanoTime() - start;
+      if (q >= config.numWarmUpQueries) {
+        latencies.record(nanos);
+      }
+    }
+    return latencies;
+  }
+}
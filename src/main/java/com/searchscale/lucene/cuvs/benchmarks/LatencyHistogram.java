@@ -0,0 +1,166 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Log-linear histogram of nanosecond latencies, in the style of HdrHistogram: values below 128 ns
+ * have their own bucket, above that every power of two is split into 64 linear buckets, so any
+ * recorded value is known within 1/64 (1.6%) of itself, from nanoseconds up to Long.MAX_VALUE, in
+ * a fixed 29 KB array. The count, sum, min and max are exact.
+ *
+ * A histogram is not thread-safe; concurrent threads record through a {@link Recorder}, which
+ * spreads them over histograms that are merged once recording is over.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;        // 128 linear values from 0
+  private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;       // 64 buckets per power of two above
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * HALF_SUB_BUCKETS;
+
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max;
+
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts[bucket(value)]++;
+    count++;
+    sum += value;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /**
+   * Adds the values of other to this histogram
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+    return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  /**
+   * Middle of the range of values of bucket
+   */
+  static long bucketValue(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / HALF_SUB_BUCKETS - 1;
+    long lowest = (long) (bucket % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS) << shift;
+    return lowest + ((1L << shift) - 1) / 2;
+  }
+
+  public long count() {
+    return count;
+  }
+
+  public long maxNanos() {
+    return max;
+  }
+
+  public double meanNanos() {
+    return count == 0 ? 0 : sum / (double) count;
+  }
+
+  /**
+   * Value at percentile (0 to 100, nearest rank), clamped to the exact min and max, which are
+   * also returned for the first and last rank
+   */
+  public long valueAtPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    if (rank == 1) {
+      return min;
+    }
+    if (rank >= count) {
+      return max;
+    }
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.max(min, Math.min(max, bucketValue(i)));
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Percentage of recorded values that are at most nanos
+   */
+  public double percentileOf(long nanos) {
+    if (count == 0) {
+      return 0;
+    }
+    int last = bucket(Math.max(0, nanos));
+    long atMost = 0;
+    for (int i = 0; i <= last; i++) {
+      atMost += counts[i];
+    }
+    return 100.0 * atMost / count;
+  }
+
+  /**
+   * Adds &lt;name&gt;-p50, -p90, -p99, -p99.9 and -max in milliseconds to entry, nothing when empty
+   */
+  public void addPercentiles(Map<String, Object> entry, String name) {
+    if (count == 0) {
+      return;
+    }
+    entry.put(name + "-p50", valueAtPercentile(50) / 1e6);
+    entry.put(name + "-p90", valueAtPercentile(90) / 1e6);
+    entry.put(name + "-p99", valueAtPercentile(99) / 1e6);
+    entry.put(name + "-p99.9", valueAtPercentile(99.9) / 1e6);
+    entry.put(name + "-max", max / 1e6);
+  }
+
+  /**
+   * Lock-free concurrent recording: every record call borrows a histogram that no other thread is
+   * writing from a lock-free queue, and returns it after recording, so there are only as many
+   * histograms as concurrent record calls, also with a virtual thread per query. {@link #merged()}
+   * must only be called once the recording threads are done (e.g. after awaitTermination of their
+   * executor, which makes their writes visible).
+   */
+  public static class Recorder {
+    private final Queue<LatencyHistogram> all = new ConcurrentLinkedQueue<>();
+    private final Queue<LatencyHistogram> free = new ConcurrentLinkedQueue<>();
+
+    public void record(long nanos) {
+      LatencyHistogram histogram = free.poll();
+      if (histogram == null) {
+        histogram = new LatencyHistogram();
+        all.add(histogram);
+      }
+      histogram.record(nanos);
+      free.add(histogram);
+    }
+
+    public LatencyHistogram merged() {
+      LatencyHistogram merged = new LatencyHistogram();
+      for (LatencyHistogram histogram : all) {
+        merged.add(histogram);
+      }
+      return merged;
+    }
+  }
+}
@@ -11,40 +11,53 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.CompoundDirectory;
 import org.apache.lucene.codecs.KnnVectorsFormat;
 import org.apache.lucene.codecs.KnnVectorsReader;
 import org.apache.lucene.codecs.KnnVectorsWriter;
 import org.apache.lucene.codecs.lucene101.Lucene101Codec;
 import org.apache.lucene.codecs.lucene101.Lucene101Codec.Mode;
+import org.apache.lucene.codecs.lucene102.Lucene102HnswBinaryQuantizedVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswScalarQuantizedVectorsFormat;
 import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnByteVectorField;
 import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LiveIndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
 import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.SegmentReadState;
 import org.apache.lucene.index.SegmentWriteState;
 import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopScoreDocCollectorManager;
@@ -53,10 +66,7 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.util.PrintStreamInfoStream;
-import org.mapdb.DB;
-import org.mapdb.DBMaker;
-import org.mapdb.IndexTreeList;
-import org.mapdb.QueueLong.Node.SERIALIZER;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -139,19 +149,63 @@ public class LuceneCuvsBenchmarks {
     // [0] Pre-check
     Util.preCheck(config);
 
-    String datasetMapdbFile = config.datasetFile + ".mapdb";
-
     // [1] Parse/load data set
     List<String> titles = new ArrayList<String>();
     VectorProvider vectorProvider;
 
     long parseStartTime = System.currentTimeMillis();
 
-    // Check if dataset is .fvecs or .fbin format and handle it directly
-    if (config.datasetFile.contains("fvecs") || config.datasetFile.contains("fbin")) {
-      log.info("Detected .fvecs or .fbin file format. Loading directly without MapDB...");
-
+    if (config.byteVectors) {
+      // Byte vectors are always read straight from the mapped file, 1 byte per component
+      log.info("Memory-mapping the dataset as byte vectors (byteVectors is enabled)");
       if (config.loadVectorsInMemory) {
+        log.warn("loadVectorsInMemory is ignored with byteVectors");
+      }
+      vectorProvider = new MappedByteVectorProvider(config.datasetFile, config.numDocs);
+      titles.add(config.vectorColName);
+    } else if (config.datasetFile.endsWith(".vblk")) {
+      log.info("Detected block-compressed .vblk file format");
+      VectorProvider blocks = new BlockCompressedVectorProvider(config.datasetFile, config.numDocs, config.blockCacheSize);
+      if (config.loadVectorsInMemory && config.offHeapVectors) {
+        try {
+          vectorProvider = loadVectorsOffHeap(blocks, config, metrics);
+        } finally {
+          blocks.close();
+        }
+      } else if (config.loadVectorsInMemory) {
+        long start = System.currentTimeMillis();
+        List<float[]> loadedVectors = new ArrayList<float[]>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+          loadedVectors.add(blocks.get(i));
+        }
+        blocks.close();
+        vectorProvider = new MemoryVectorProvider(loadedVectors);
+        addHeapVectorsMetrics(loadedVectors, System.currentTimeMillis() - start, metrics);
+      } else {
+        vectorProvider = blocks;
+      }
+      titles.add(config.vectorColName);
+    } else if (config.mmapVectors && !config.loadVectorsInMemory && MappedVectorProvider.supports(config.datasetFile)) {
+      // Memory-map uncompressed fvecs/fbin/bvecs files when requested, unless they are to be loaded in memory
+      log.info("Memory-mapping the dataset file (mmapVectors is enabled)");
+      vectorProvider = new MappedVectorProvider(config.datasetFile, config.numDocs);
+      titles.add(config.vectorColName);
+    } else if (config.datasetFile.contains("fvecs") || config.datasetFile.contains("fbin")) {
+      // Check if dataset is .fvecs or .fbin format and handle it directly
+      log.info("Detected .fvecs or .fbin file format. Loading directly without a vector cache...");
+
+      if (config.loadVectorsInMemory && config.offHeapVectors && MappedVectorProvider.supports(config.datasetFile)) {
+        log.info("Loading all vectors off-heap (loadVectorsInMemory and offHeapVectors are enabled)");
+        VectorProvider source = new MappedVectorProvider(config.datasetFile, config.numDocs);
+        try {
+          vectorProvider = loadVectorsOffHeap(source, config, metrics);
+        } finally {
+          source.close();
+        }
+      } else if (config.loadVectorsInMemory) {
+        if (config.offHeapVectors) {
+          log.warn("offHeapVectors is only supported for uncompressed files, loading {} on heap", config.datasetFile);
+        }
         log.info("Loading all vectors in memory (loadVectorsInMemory is enabled)");
         long start = System.currentTimeMillis();
         List<float[]> loadedVectors = new ArrayList<float[]>();
@@ -163,6 +217,7 @@ public class LuceneCuvsBenchmarks {
         }
 
         vectorProvider = new MemoryVectorProvider(loadedVectors);
+        addHeapVectorsMetrics(loadedVectors, System.currentTimeMillis() - start, metrics);
         log.info("Time taken to load {} vectors in-memory: {} ms", loadedVectors.size(), (System.currentTimeMillis() - start));
       } else {
         log.info("Creating streaming vector provider (loadVectorsInMemory is disabled)");
@@ -171,51 +226,68 @@ public class LuceneCuvsBenchmarks {
 
       titles.add(config.vectorColName);
     } else {
-      // Use MapDB for non-.fvecs files (CSV, bvecs, etc.)
-      DB db;
-      IndexTreeList<float[]> vectors;
-
-      if (new File(datasetMapdbFile).exists() == false) {
-        log.info("Mapdb file not found for dataset. Preparing one ...");
-        db = DBMaker.fileDB(datasetMapdbFile).make();
-        vectors = db.indexTreeList("vectors", SERIALIZER.FLOAT_ARRAY).createOrOpen();
-        if (config.datasetFile.endsWith(".csv") || config.datasetFile.endsWith(".csv.gz")) {
-          Util.parseCSVFile(config, titles, vectors);
-        } else if (config.datasetFile.contains("bvecs")) {
-          Util.readBaseFile(config, titles, vectors);
-        }
-        log.info("Created a mapdb file with {} number of vectors.", vectors.size());
-      } else {
-        log.info("Mapdb file found for vectors. Loading ...");
-        db = DBMaker.fileDB(datasetMapdbFile).make();
-        vectors = db.indexTreeList("vectors", SERIALIZER.FLOAT_ARRAY).createOrOpen();
-        log.info("{} vectors available from the mapdb file", vectors.size());
+      // CSV, bvecs, etc. are parsed once into a flat binary cache that later runs memory-map
+      String datasetCacheFile = config.datasetFile + VectorCache.EXTENSION;
+      if (!VectorCache.isValid(datasetCacheFile, config.datasetFile, config.numDocs)) {
+        log.info("No valid vector cache found for dataset. Preparing one ...");
+        try (VectorCache.Writer writer = VectorCache.create(datasetCacheFile, config.datasetFile, config.numDocs)) {
+          if (config.datasetFile.endsWith(".csv") || config.datasetFile.endsWith(".csv.gz")
+              || config.datasetFile.endsWith(".csv.zip")) {
+            CsvVectorReader.read(config.datasetFile, config.indexOfVector, config.numDocs, titles, writer::add);
+          } else if (config.datasetFile.contains("bvecs")) {
+            Util.readBaseFile(config, titles, writer.asList());
+          }
+          writer.commit();
+          log.info("Created a vector cache with {} number of vectors.", writer.count());
+        }
       }
+      MappedVectorProvider cached = VectorCache.open(datasetCacheFile, config.numDocs);
+      log.info("{} vectors available from the vector cache", cached.size());
 
-      if (config.loadVectorsInMemory) {
-        log.info("Mapdb loaded. Now loading all vectors in memory (loadVectorsInMemory is enabled)");
+      if (config.loadVectorsInMemory && config.offHeapVectors) {
+        log.info("Vector cache mapped. Now loading all vectors off-heap (loadVectorsInMemory and offHeapVectors are enabled)");
+        try {
+          vectorProvider = loadVectorsOffHeap(cached, config, metrics);
+        } finally {
+          cached.close();
+        }
+      } else if (config.loadVectorsInMemory) {
+        log.info("Vector cache mapped. Now loading all vectors in memory (loadVectorsInMemory is enabled)");
         long start = System.currentTimeMillis();
-        List<float[]> loadedVectors = new ArrayList<float[]>(vectors.size());
-        for (int i = 0; i < vectors.size(); i++) {
-          loadedVectors.add(vectors.get(i));
+        List<float[]> loadedVectors = new ArrayList<float[]>(cached.size());
+        for (int i = 0; i < cached.size(); i++) {
+          loadedVectors.add(cached.get(i));
         }
         vectorProvider = new MemoryVectorProvider(loadedVectors);
-        db.close();
+        cached.close();
+        addHeapVectorsMetrics(loadedVectors, System.currentTimeMillis() - start, metrics);
         log.info("Time taken to load the vectors in-memory is: {}", (System.currentTimeMillis() - start));
       } else {
-        vectorProvider = new MapDBVectorProvider(vectors, db);
+        vectorProvider = cached;
       }
     }
 
+    ExecutorService hnswMergeExecutor = null;
     try {
 
       log.info("Time taken for parsing/loading dataset is {} ms", (System.currentTimeMillis() - parseStartTime));
+      checkDimension(vectorProvider, config);
 
       // [2] Benchmarking setup
 
+      // Records flushes and merges of the build; the InfoStream output is still printed when enabled
+      IndexingInstrumentation instrumentation = new IndexingInstrumentation(
+          INDEX_WRITER_INFO_STREAM ? new PrintStreamInfoStream(System.out) : null);
+
+      // Workers that build the graph of a merged HNSW segment concurrently (Lucene requires no executor for 1)
+      int hnswMergeWorkers = config.getEffectiveHnswNumMergeWorkers();
+      if (hnswMergeWorkers > 1) {
+        hnswMergeExecutor = Executors.newFixedThreadPool(hnswMergeWorkers);
+      }
+
       // HNSW Writer:
       IndexWriterConfig luceneHNSWWriterConfig = new IndexWriterConfig(new StandardAnalyzer());
-      luceneHNSWWriterConfig.setCodec(getLuceneHnswCodec(config));
+      luceneHNSWWriterConfig.setCodec(getLuceneHnswCodec(config, instrumentation, hnswMergeExecutor));
       //luceneHNSWWriterConfig.setUseCompoundFile(false);
       // Configure to flush based on document count only
       // For 4M docs with 768-dim float vectors, we need approximately:
@@ -224,11 +296,7 @@ public class LuceneCuvsBenchmarks {
 
       luceneHNSWWriterConfig.setMaxBufferedDocs(config.flushFreq);
       luceneHNSWWriterConfig.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
-      if (config.forceMerge > 0 || config.enableTieredMerge) {
-    	luceneHNSWWriterConfig.setMergePolicy(new TieredMergePolicy());
-      } else {
-        luceneHNSWWriterConfig.setMergePolicy(NoMergePolicy.INSTANCE);
-      }
+      luceneHNSWWriterConfig.setMergePolicy(newMergePolicy(config));
     	  
       // Use reflection to bypass the 2048MB per-thread limit and set it to 10GB
       setPerThreadRAMLimit(luceneHNSWWriterConfig, 10240); // 10GB per thread
@@ -245,11 +313,7 @@ public class LuceneCuvsBenchmarks {
       // Set RAM buffer to 32GB to ensure doc count triggers flush first
       cuvsIndexWriterConfig.setMaxBufferedDocs(config.flushFreq);
       cuvsIndexWriterConfig.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
-      if (config.forceMerge > 0 || config.enableTieredMerge) {
-    	  cuvsIndexWriterConfig.setMergePolicy(new TieredMergePolicy());
-      } else {
-    	  cuvsIndexWriterConfig.setMergePolicy(NoMergePolicy.INSTANCE);
-      }
+      cuvsIndexWriterConfig.setMergePolicy(newMergePolicy(config));
       
       // Use reflection to bypass the 2048MB per-thread limit and set it to 10GB
       setPerThreadRAMLimit(cuvsIndexWriterConfig, 10240); // 10GB per thread
@@ -257,12 +321,37 @@ public class LuceneCuvsBenchmarks {
               config.flushFreq, cuvsIndexWriterConfig.getRAMBufferSizeMB(),
               cuvsIndexWriterConfig.getRAMPerThreadHardLimitMB());
 
-      if (INDEX_WRITER_INFO_STREAM) {
-        luceneHNSWWriterConfig.setInfoStream(new PrintStreamInfoStream(System.out));
-        cuvsIndexWriterConfig.setInfoStream(new PrintStreamInfoStream(System.out));
+      if (config.getEffectiveIdResolution() == IdResolver.Mode.INDEX_ORDER) {
+        // Every segment is sorted by id, so hits resolve to ids by their position in the segment
+        luceneHNSWWriterConfig.setIndexSort(IdResolver.indexSort());
       }
 
-     	if (!config.skipIndexing) {
+      instrumentation.apply(luceneHNSWWriterConfig);
+      instrumentation.apply(cuvsIndexWriterConfig);
+      configureMergeScheduler(luceneHNSWWriterConfig, config);
+      configureMergeScheduler(cuvsIndexWriterConfig, config);
+
+      // With an index cache the index directory is the cache entry of the index parameters
+      IndexCache indexCache = IndexCache.open(config,
+          config.isCagra() ? cuvsIndexWriterConfig.getCodec() : luceneHNSWWriterConfig.getCodec());
+      boolean reuseCachedIndex = false;
+      if (indexCache != null) {
+        if (config.isCagra()) {
+          config.cuvsIndexDirPath = indexCache.indexPath().toString();
+        } else {
+          config.hnswIndexDirPath = indexCache.indexPath().toString();
+        }
+        reuseCachedIndex = indexCache.isComplete();
+        if (reuseCachedIndex) {
+          indexCache.reuse(metrics);
+        } else if (config.skipIndexing) {
+          log.warn("skipIndexing is set but index cache entry {} is not built", indexCache.key());
+        } else {
+          indexCache.prepareBuild(config.checkpointIntervalSec > 0);
+        }
+      }
+
+     	if (!config.skipIndexing && !reuseCachedIndex) {
 
 
       IndexWriter luceneHnswIndexWriter = null;
@@ -270,14 +359,14 @@ public class LuceneCuvsBenchmarks {
 
       
       
-      if (config.algoToRun.equalsIgnoreCase("LUCENE_HNSW")) {
+      if (config.isLucene()) {
         if (!config.createIndexInMemory) {
           Path hnswIndex = Path.of(config.hnswIndexDirPath);
           luceneHnswIndexWriter = new IndexWriter(FSDirectory.open(hnswIndex), luceneHNSWWriterConfig);
         } else {
           luceneHnswIndexWriter = new IndexWriter(new ByteBuffersDirectory(), luceneHNSWWriterConfig);
         }
-      } else if (config.algoToRun.equalsIgnoreCase("CAGRA_HNSW")) {
+      } else if (config.isCagra()) {
         if (!config.createIndexInMemory) {
           Path cuvsIndex = Path.of(config.cuvsIndexDirPath);
           cuvsIndexWriter = new IndexWriter(FSDirectory.open(cuvsIndex), cuvsIndexWriterConfig);
@@ -289,12 +378,12 @@ public class LuceneCuvsBenchmarks {
 
       IndexWriter writer;
 
-      if ("LUCENE_HNSW".equalsIgnoreCase(config.algoToRun)) {
+      if (config.isLucene()) {
         writer = luceneHnswIndexWriter;
-      } else if ("CAGRA_HNSW".equalsIgnoreCase(config.algoToRun)) {
+      } else if (config.isCagra()) {
         writer = cuvsIndexWriter;
       } else {
-        throw new IllegalArgumentException("Please pass an acceptable option for `algoToRun`. Choices: LUCENE_HNSW, CAGRA_HNSW");
+        throw new IllegalArgumentException("Please pass an acceptable option for `algoToRun`. Choices: LUCENE_HNSW, LUCENE_HNSW_SQ, LUCENE_HNSW_BQ, CAGRA_HNSW");
       }
 
         var formatName = writer.getConfig().getCodec().knnVectorsFormat().getName();
@@ -302,9 +391,21 @@ public class LuceneCuvsBenchmarks {
         boolean isCuVSIndexing = formatName.equals("Lucene99AcceleratedHNSWVectorsFormat");
 
         log.info("Indexing documents using {} ...", formatName);
+        metrics.put("vector-encoding", config.byteVectors ? "byte" : "float");
+        // The writer's config is not accessible once it is closed
+        LiveIndexWriterConfig writerConfig = writer.getConfig();
         long indexStartTime = System.currentTimeMillis();
-        indexDocuments(writer, config, titles, vectorProvider);
+        if (config.nrtMode) {
+          indexWhileSearching(writer, config, titles, vectorProvider, instrumentation, metrics);
+        } else {
+          indexDocuments(writer, config, titles, vectorProvider, instrumentation, metrics);
+        }
         long indexTimeTaken = System.currentTimeMillis() - indexStartTime;
+        if (metrics.containsKey("previous-sessions-indexing-time")) {
+          // A resumed build reports the indexing time of all its sessions
+          metrics.put("indexing-session-time", indexTimeTaken);
+          indexTimeTaken += (Long) metrics.get("previous-sessions-indexing-time");
+        }
         if (isCuVSIndexing) {
           metrics.put("cuvs-indexing-time", indexTimeTaken);
         } else {
@@ -312,6 +413,20 @@ public class LuceneCuvsBenchmarks {
         }
 
         log.info("Time taken for index building (end to end): {} ms", indexTimeTaken);
+        addMergeSettingsMetrics(writerConfig, config, metrics);
+
+        if (vectorProvider instanceof BlockCompressedVectorProvider blocks) {
+          metrics.put("block-cache-hits", blocks.getCacheHits());
+          metrics.put("block-cache-misses", blocks.getCacheMisses());
+          metrics.put("block-decode-time", blocks.getDecodeNanos() / 1_000_000);
+        }
+        if (vectorProvider instanceof MappedVectorProvider mapped) {
+          double readMB = mapped.getBytesRead() / 1_048_576.0;
+          metrics.put("vector-read-bytes", mapped.getBytesRead());
+          metrics.put("vector-read-throughput-mbps", readMB / (mapped.getReadNanos() / 1e9));
+          metrics.put("vector-read-effective-mbps", readMB / (indexTimeTaken / 1000.0));
+          log.info("Read {} MB from the mapped dataset file", readMB);
+        }
 
         boolean usingFSDirectory = luceneHnswIndexWriter != null
             ? luceneHnswIndexWriter.getDirectory() instanceof FSDirectory
@@ -337,50 +452,83 @@ public class LuceneCuvsBenchmarks {
           log.error("Failed to calculate directory size for {}",
               writer == cuvsIndexWriter ? config.cuvsIndexDirPath : config.hnswIndexDirPath, e);
         }
+
+        try {
+          addIndexFileSizes(writer.getDirectory(), metrics);
+        } catch (IOException e) {
+          log.error("Failed to calculate per-file index sizes", e);
+        }
+
+        if (config.churnRounds > 0) {
+          runChurn(writerConfig, writer.getDirectory(), config, titles, vectorProvider, instrumentation, metrics);
+        }
+        if (indexCache != null) {
+          indexCache.store(metrics);
+        }
        }
      	
-      Directory indexDir = MMapDirectory.open("CAGRA_HNSW".equals(config.algoToRun) ? Path.of(config.cuvsIndexDirPath) : Path.of(config.hnswIndexDirPath));
+      Directory indexDir = MMapDirectory.open(config.isCagra() ? Path.of(config.cuvsIndexDirPath) : Path.of(config.hnswIndexDirPath));
       log.info("Index directory is: {} (using memory-mapped files)", indexDir);
       log.info("Querying documents using {} ...", config.algoToRun);
       // Always use standard Lucene search since we always create Lucene HNSW indexes
-      search(indexDir, config, false, metrics, queryResults,
-        Util.readGroundTruthFile(config.groundTruthFile));
-
-      Util.calculateRecallAccuracy(queryResults, metrics, "CAGRA_HNSW".equalsIgnoreCase(config.algoToRun));
+      // Query results read their ground truth rows from it until they are written out
+      try (GroundTruth groundTruth = GroundTruth.open(config.groundTruthFile)) {
+        metrics.put("ground-truth-heap-bytes", groundTruth.heapBytes());
+        search(indexDir, config, false, metrics, queryResults, groundTruth);
 
-      String resultsJson = Util.newObjectMapper().writerWithDefaultPrettyPrinter()
-          .writeValueAsString(Map.of("configuration", config, "metrics", metrics));
+        Util.calculateRecallAccuracy(queryResults, metrics, config.isCagra());
 
-      if (config.saveResultsOnDisk) {
-        // Use the resultsDirectory directly if provided
-        String resultsDir = config.resultsDirectory != null ? config.resultsDirectory : "results";
-        File results = new File(resultsDir);
-        if (!results.exists()) {
-          results.mkdirs();
+        // Open-loop load, single-query latency per intra-query thread count, simulated clients with
+        // think time on a fixed pool and on virtual threads, and batched search
+        if (config.openLoopQps > 0) {
+          runOnIndex(indexDir, config, metrics, OpenLoopBenchmark::run);
+        }
+        if (config.intraQueryThreads > 1) {
+          runOnIndex(indexDir, config, metrics, IntraQueryBenchmark::run);
+        }
+        if (config.simulatedClients > 0) {
+          runOnIndex(indexDir, config, metrics, ClientSimulationBenchmark::run);
+        }
+        if (config.batchSearchMaxSize > 0) {
+          runOnIndex(indexDir, config, metrics, (reader, batchConfig, queries, batchMetrics) ->
+              BatchSearchBenchmark.run(reader, batchConfig, queries, groundTruth, batchMetrics));
         }
 
-        // Save results.json directly to the specified directory
-        FileUtils.write(
-            new File(results.toString() + "/results.json"),
-            resultsJson, Charset.forName("UTF-8"));
-            
-        // Save CSV with neighbors data  
-        Util.writeCSV(queryResults, results.toString() + "/neighbors.csv");
-        
-        log.info("Results saved to directory: {}", resultsDir);
-      }
+        String resultsJson = Util.newObjectMapper().writerWithDefaultPrettyPrinter()
+            .writeValueAsString(Map.of("configuration", config, "metrics", metrics));
 
-      log.info("\n-----\nOverall metrics: " + metrics + "\nMetrics: \n" + resultsJson + "\n-----");
+        if (config.saveResultsOnDisk) {
+          // Use the resultsDirectory directly if provided
+          String resultsDir = config.resultsDirectory != null ? config.resultsDirectory : "results";
+          File results = new File(resultsDir);
+          if (!results.exists()) {
+            results.mkdirs();
+          }
+
+          // Save results.json directly to the specified directory
+          FileUtils.write(
+              new File(results.toString() + "/results.json"),
+              resultsJson, Charset.forName("UTF-8"));
+
+          // Save CSV with neighbors data  
+          Util.writeCSV(queryResults, results.toString() + "/neighbors.csv");
+
+          log.info("Results saved to directory: {}", resultsDir);
+        }
+        log.info("\n-----\nOverall metrics: " + metrics + "\nMetrics: \n" + resultsJson + "\n-----");
+      }
       
       // Close the index directory before cleaning
       indexDir.close();
       
       // Clean index directory after benchmarks complete if requested
-      if (config.cleanIndexDirectory && !config.createIndexInMemory) {
+      if (config.cleanIndexDirectory && indexCache != null) {
+        log.info("Keeping index cache entry {}, the index cache evicts its indexes itself", indexCache.key());
+      } else if (config.cleanIndexDirectory && !config.createIndexInMemory) {
         Path indexPath = null;
-        if (config.algoToRun.equalsIgnoreCase("LUCENE_HNSW")) {
+        if (config.isLucene()) {
           indexPath = Path.of(config.hnswIndexDirPath);
-        } else if (config.algoToRun.equalsIgnoreCase("CAGRA_HNSW")) {
+        } else if (config.isCagra()) {
           indexPath = Path.of(config.cuvsIndexDirPath);
         }
         
@@ -395,130 +543,552 @@ public class LuceneCuvsBenchmarks {
         }
       }
     } finally {
+      if (hnswMergeExecutor != null) {
+        hnswMergeExecutor.shutdown();
+      }
       if (vectorProvider != null) {
         vectorProvider.close();
       }
     }
   }
 
-  private static void indexDocuments(IndexWriter writer, BenchmarkConfiguration config, List<String> titles,
-      VectorProvider vectorProvider) throws IOException, InterruptedException {
+  /**
+   * TieredMergePolicy with the configured segment sizes when merges are enabled, NoMergePolicy otherwise
+   */
+  private static MergePolicy newMergePolicy(BenchmarkConfiguration config) {
+    if (config.forceMerge <= 0 && !config.enableTieredMerge) {
+      return NoMergePolicy.INSTANCE;
+    }
+    TieredMergePolicy mergePolicy = new TieredMergePolicy();
+    if (config.tieredMaxMergedSegmentMB > 0) {
+      mergePolicy.setMaxMergedSegmentMB(config.tieredMaxMergedSegmentMB);
+    }
+    if (config.tieredSegmentsPerTier > 0) {
+      mergePolicy.setSegmentsPerTier(config.tieredSegmentsPerTier);
+    }
+    if (config.tieredFloorSegmentMB > 0) {
+      mergePolicy.setFloorSegmentMB(config.tieredFloorSegmentMB);
+    }
+    if (config.deletesPctAllowed > 0) {
+      mergePolicy.setDeletesPctAllowed(config.deletesPctAllowed);
+    }
+    return mergePolicy;
+  }
 
-    int threads = config.numIndexThreads;
-    ExecutorService pool = Executors.newFixedThreadPool(threads);
-    AtomicInteger numDocsIndexed = new AtomicInteger(0);
-    log.info("Starting indexing with {} threads.", threads);
-    log.info("IndexWriter config - MaxBufferedDocs: {}, RAMBufferSizeMB: {}", 
-            writer.getConfig().getMaxBufferedDocs(), writer.getConfig().getRAMBufferSizeMB());
-    final int numDocsToIndex = Math.min(config.numDocs, vectorProvider.size());
+  /**
+   * Applies mergeSchedulerMaxThreads/mergeSchedulerMaxMergeCount; when only one of them is set the
+   * other follows Lucene's default relation maxMergeCount = maxThreadCount + 5
+   */
+  private static void configureMergeScheduler(IndexWriterConfig writerConfig, BenchmarkConfiguration config) {
+    if (config.mergeSchedulerMaxThreads <= 0 && config.mergeSchedulerMaxMergeCount <= 0) {
+      return; // auto-detected from the number of cores and the storage type
+    }
+    int maxThreads = config.mergeSchedulerMaxThreads > 0 ? config.mergeSchedulerMaxThreads
+        : Math.max(1, config.mergeSchedulerMaxMergeCount - 5);
+    int maxMergeCount = config.mergeSchedulerMaxMergeCount > 0 ? config.mergeSchedulerMaxMergeCount : maxThreads + 5;
+    ((ConcurrentMergeScheduler) writerConfig.getMergeScheduler()).setMaxMergesAndThreads(maxMergeCount, maxThreads);
+  }
+
+  /**
+   * Records the merge settings in effect, next to the build times they produced, for scaling curves
+   */
+  private static void addMergeSettingsMetrics(LiveIndexWriterConfig writerConfig, BenchmarkConfiguration config,
+      Map<String, Object> metrics) {
+    metrics.put("available-processors", Runtime.getRuntime().availableProcessors());
+    metrics.put("hnsw-merge-workers", config.getEffectiveHnswNumMergeWorkers());
+    if (writerConfig.getMergeScheduler() instanceof ConcurrentMergeScheduler cms) {
+      metrics.put("merge-scheduler-max-threads", cms.getMaxThreadCount());
+      metrics.put("merge-scheduler-max-merge-count", cms.getMaxMergeCount());
+    }
+  }
+
+  /**
+   * Adds the committed index size per file extension to metrics, looking inside compound files, so that
+   * quantized vectors (.veq, .veb), raw vectors (.vec) and the HNSW graph (.vex) can be compared
+   */
+  private static void addIndexFileSizes(Directory directory, Map<String, Object> metrics) throws IOException {
+    Map<String, Long> sizes = new TreeMap<>();
+    SegmentInfos segmentInfos = SegmentInfos.readLatestCommit(directory);
+    for (SegmentCommitInfo info : segmentInfos) {
+      for (String file : info.files()) {
+        if (file.endsWith(".cfs") || file.endsWith(".cfe")) {
+          continue;
+        }
+        sizes.merge(IndexFileNames.getExtension(file), directory.fileLength(file), Long::sum);
+      }
+      if (info.info.getUseCompoundFile()) {
+        try (CompoundDirectory compound = info.info.getCodec().compoundFormat().getCompoundReader(directory, info.info)) {
+          for (String file : compound.listAll()) {
+            sizes.merge(IndexFileNames.getExtension(file), compound.fileLength(file), Long::sum);
+          }
+        }
+      }
+    }
+    long rawVectorBytes = sizes.getOrDefault("vec", 0L);
+    long quantizedVectorBytes = sizes.getOrDefault("veq", 0L) + sizes.getOrDefault("veb", 0L);
+    metrics.put("index-file-sizes", sizes);
+    metrics.put("index-raw-vector-bytes", rawVectorBytes);
+    metrics.put("index-quantized-vector-bytes", quantizedVectorBytes);
+    metrics.put("index-graph-bytes", sizes.getOrDefault("vex", 0L));
+    log.info("Index size per file extension (bytes): {}, raw vectors {} MB, quantized vectors {} MB", sizes,
+        rawVectorBytes / 1_048_576, quantizedVectorBytes / 1_048_576);
+  }
+
+  /**
+   * Vector buffers are sized from the dataset, a different vectorDimension would only surface as bad reads
+   */
+  private static void checkDimension(VectorProvider vectors, BenchmarkConfiguration config) {
+    if (vectors.dimension() != config.vectorDimension) {
+      throw new IllegalArgumentException("The dataset " + config.datasetFile + " has " + vectors.dimension()
+          + " dimensions, but vectorDimension is " + config.vectorDimension + ". Not proceeding.");
+    }
+  }
+
+  private static OffHeapVectorProvider loadVectorsOffHeap(VectorProvider source, BenchmarkConfiguration config,
+      Map<String, Object> metrics) throws IOException, InterruptedException {
+    // Fail before copying the dataset into a layout of the wrong dimension
+    checkDimension(source, config);
+    long start = System.currentTimeMillis();
+    OffHeapVectorProvider store = OffHeapVectorProvider.load(source, config.numDocs, Math.max(1, config.numIndexThreads));
+    long loadTime = System.currentTimeMillis() - start;
+    metrics.put("vectors-storage", "off-heap");
+    metrics.put("vectors-load-time", loadTime);
+    metrics.put("vectors-resident-bytes", store.residentBytes());
+    log.info("Time taken to load {} vectors off-heap: {} ms ({} bytes)", store.size(), loadTime, store.residentBytes());
+    return store;
+  }
+
+  private static void addHeapVectorsMetrics(List<float[]> vectors, long loadTime, Map<String, Object> metrics) {
+    // Every vector is a separate array with its own header, plus a reference from the list
+    long residentBytes = (long) vectors.size() * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+    for (float[] vector : vectors) {
+      residentBytes += RamUsageEstimator.sizeOf(vector);
+    }
+    metrics.put("vectors-storage", "heap");
+    metrics.put("vectors-load-time", loadTime);
+    metrics.put("vectors-resident-bytes", residentBytes);
+  }
+
+  /**
+   * Adds one document per vector in block[0, count), for doc ids [start, start + count). With a
+   * batch (batchedIndexing), the batch's reusable documents are filled and added in one call.
+   */
+  private static void indexBlock(IndexWriter writer, BenchmarkConfiguration config, List<String> titles,
+      DocumentBatch batch, float[][] block, int start, int count) throws IOException {
+    if (batch != null) {
+      writer.addDocuments(batch.fill(block, titles, start, count));
+      logProgress(writer, config, start, count);
+      return;
+    }
+    for (int j = 0; j < count; j++) {
+      int id = start + j;
+      Document doc = new Document();
+      doc.add(new StringField("id", String.valueOf(id), Field.Store.YES));
+      if (config.hasIdDocValues())
+        doc.add(new NumericDocValuesField(IdResolver.ID_DOC_VALUES_FIELD, id));
+      doc.add(new KnnFloatVectorField(config.vectorColName, block[j], EUCLIDEAN));
+      if (RESULTS_DEBUGGING)
+        doc.add(new StringField("title", titles.get(id), Field.Store.YES));
+      writer.addDocument(doc);
+      if ((id + 1) % 25000 == 0) {
+        log.info("Done indexing {} documents. Pending docs: {}", (id + 1), writer.getPendingNumDocs());
+      }
+      // Log when we expect a flush
+      if ((id + 1) == config.flushFreq || (id + 1) == 2 * config.flushFreq) {
+        log.info("Expected flush point reached at {} documents", (id + 1));
+      }
+    }
+  }
+
+  private static void indexBlock(IndexWriter writer, BenchmarkConfiguration config, DocumentBatch batch,
+      byte[][] block, int start, int count) throws IOException {
+    if (batch != null) {
+      writer.addDocuments(batch.fill(block, start, count));
+      logProgress(writer, config, start, count);
+      return;
+    }
+    for (int j = 0; j < count; j++) {
+      int id = start + j;
+      Document doc = new Document();
+      doc.add(new StringField("id", String.valueOf(id), Field.Store.YES));
+      if (config.hasIdDocValues())
+        doc.add(new NumericDocValuesField(IdResolver.ID_DOC_VALUES_FIELD, id));
+      doc.add(new KnnByteVectorField(config.vectorColName, block[j], EUCLIDEAN));
+      writer.addDocument(doc);
+      if ((id + 1) % 25000 == 0) {
+        log.info("Done indexing {} documents. Pending docs: {}", (id + 1), writer.getPendingNumDocs());
+      }
+    }
+  }
+
+  /**
+   * The per-document progress logging of indexBlock, for a whole block of doc ids [start, start + count)
+   */
+  private static void logProgress(IndexWriter writer, BenchmarkConfiguration config, int start, int count) {
+    int end = start + count;
+    if (end / 25000 > start / 25000) {
+      log.info("Done indexing {} documents. Pending docs: {}", end / 25000 * 25000, writer.getPendingNumDocs());
+    }
+    for (int flushPoint : new int[] {config.flushFreq, 2 * config.flushFreq}) {
+      if (flushPoint > start && flushPoint <= end) {
+        log.info("Expected flush point reached at {} documents", flushPoint);
+      }
+    }
+  }
 
+  /**
+   * Indexes byte vectors [firstDoc, endDoc) with KnnByteVectorField, each thread claiming blocks of
+   * doc ids at a time
+   */
+  private static void indexByteDocuments(IndexWriter writer, BenchmarkConfiguration config,
+      ByteVectorProvider vectorProvider, int firstDoc, int endDoc, int threads, int blockSize, IndexingStats stats,
+      IndexCheckpointer checkpointer) throws InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    AtomicInteger nextBlockStart = new AtomicInteger(firstDoc);
+    log.info("Starting byte vector indexing of [{}, {}) with {} threads.", firstDoc, endDoc, threads);
     for (int i = 0; i < threads; i++) {
       pool.submit(() -> {
-        int localCount = 0;
+        byte[][] block = new byte[blockSize][vectorProvider.dimension()];
+        DocumentBatch batch = config.batchedIndexing
+            ? new DocumentBatch(config, blockSize, true, vectorProvider.dimension()) : null;
         while (true) {
-          int id = numDocsIndexed.getAndIncrement();
-          if (id >= numDocsToIndex) {
+          int start = checkpointer != null ? checkpointer.claim(blockSize) : nextBlockStart.getAndAdd(blockSize);
+          if (start >= endDoc) {
             break; // done
           }
-          float[] vector;
+          int count = Math.min(blockSize, endDoc - start);
           try {
-            vector = Objects.requireNonNull(vectorProvider.get(id));
-            localCount++;
+            vectorProvider.readRange(start, count, block);
+            stats.measure(count, () -> indexBlock(writer, config, batch, block, start, count));
+            if (checkpointer != null) {
+              checkpointer.completed(start, count);
+            }
           } catch (IOException e) {
-            throw new UncheckedIOException("Failed to read vector at index " + id, e);
+            throw new UncheckedIOException("Failed to index vectors [" + start + ", " + (start + count) + ")", e);
+          }
+        }
+      });
+    }
+    pool.shutdown();
+    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Indexes float vectors [firstDoc, endDoc), each thread claiming blocks of doc ids at a time
+   */
+  private static void indexFloatDocuments(IndexWriter writer, BenchmarkConfiguration config, List<String> titles,
+      VectorProvider vectorProvider, int firstDoc, int endDoc, int threads, int blockSize, IndexingStats stats,
+      IndexCheckpointer checkpointer) throws InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    AtomicInteger nextBlockStart = new AtomicInteger(firstDoc);
+    log.info("Starting indexing of [{}, {}) with {} threads.", firstDoc, endDoc, threads);
+    for (int i = 0; i < threads; i++) {
+      pool.submit(() -> {
+        // Vectors are read into these reusable buffers; IndexWriter copies vector values on addDocument
+        float[][] block = new float[blockSize][vectorProvider.dimension()];
+        DocumentBatch batch = config.batchedIndexing
+            ? new DocumentBatch(config, blockSize, false, vectorProvider.dimension()) : null;
+        while (true) {
+          int start = checkpointer != null ? checkpointer.claim(blockSize) : nextBlockStart.getAndAdd(blockSize);
+          if (start >= endDoc) {
+            break; // done
           }
-          Document doc = new Document();
-          doc.add(new StringField("id", String.valueOf(id), Field.Store.YES));
-          doc.add(new KnnFloatVectorField(config.vectorColName, vector, EUCLIDEAN));
-          if (RESULTS_DEBUGGING)
-            doc.add(new StringField("title", titles.get(id), Field.Store.YES));
+          int count = Math.min(blockSize, endDoc - start);
           try {
-            writer.addDocument(doc);
-            if ((id + 1) % 25000 == 0) {
-              log.info("Done indexing {} documents. Pending docs: {}", (id + 1), writer.getPendingNumDocs());
-            }
-            // Log when we expect a flush
-            if ((id + 1) == config.flushFreq || (id + 1) == 2 * config.flushFreq) {
-              log.info("Expected flush point reached at {} documents", (id + 1));
+            vectorProvider.readRange(start, count, block);
+            stats.measure(count, () -> indexBlock(writer, config, titles, batch, block, start, count));
+            if (checkpointer != null) {
+              checkpointer.completed(start, count);
             }
-          } catch (IOException ex) {
-            throw new UncheckedIOException(ex);
+          } catch (IOException e) {
+            throw new UncheckedIOException("Failed to index vectors [" + start + ", " + (start + count) + ")", e);
           }
         }
       });
     }
     pool.shutdown();
     pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Builds numPartitions independent indexes over consecutive doc id ranges in parallel, each with
+   * its own IndexWriter, and adds them to writer with addIndexes
+   */
+  private static void indexPartitioned(IndexWriter writer, BenchmarkConfiguration config, List<String> titles,
+      VectorProvider vectorProvider, int numDocsToIndex, int blockSize, IndexingStats stats,
+      IndexingInstrumentation instrumentation, Map<String, Object> metrics) throws IOException, InterruptedException {
+    int partitions = config.numPartitions;
+    int threadsPerPartition = Math.max(1, config.numIndexThreads / partitions);
+    Path partitionRoot = null;
+    if (writer.getDirectory() instanceof FSDirectory fsDirectory) {
+      Path indexPath = fsDirectory.getDirectory();
+      partitionRoot = indexPath.resolveSibling(indexPath.getFileName() + "-partitions");
+      FileUtils.deleteDirectory(partitionRoot.toFile());
+    }
+    log.info("Building {} partitions with {} threads each{}", partitions, threadsPerPartition,
+        partitionRoot != null ? " under " + partitionRoot : " in memory");
+
+    Directory[] directories = new Directory[partitions];
+    long[] partitionTimes = new long[partitions];
+    ExecutorService partitionPool = Executors.newFixedThreadPool(partitions);
+    List<Future<?>> futures = new ArrayList<>();
+    long buildStart = System.currentTimeMillis();
+    for (int p = 0; p < partitions; p++) {
+      final int partition = p;
+      final int firstDoc = (int) ((long) numDocsToIndex * p / partitions);
+      final int endDoc = (int) ((long) numDocsToIndex * (p + 1) / partitions);
+      directories[p] = partitionRoot != null ? FSDirectory.open(partitionRoot.resolve("part-" + p)) : new ByteBuffersDirectory();
+      futures.add(partitionPool.submit(() -> {
+        long start = System.currentTimeMillis();
+        try (IndexWriter partitionWriter = new IndexWriter(directories[partition], newPartitionWriterConfig(writer.getConfig(), config, instrumentation))) {
+          if (config.byteVectors) {
+            indexByteDocuments(partitionWriter, config, (ByteVectorProvider) vectorProvider, firstDoc, endDoc,
+                threadsPerPartition, blockSize, stats, null);
+          } else {
+            indexFloatDocuments(partitionWriter, config, titles, vectorProvider, firstDoc, endDoc, threadsPerPartition,
+                blockSize, stats, null);
+          }
+          partitionWriter.commit();
+        }
+        partitionTimes[partition] = System.currentTimeMillis() - start;
+        log.info("Partition {} with docs [{}, {}) built in {} ms", partition, firstDoc, endDoc, partitionTimes[partition]);
+        return null;
+      }));
+    }
+    partitionPool.shutdown();
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to build a partition", e.getCause());
+    }
+    long buildTime = System.currentTimeMillis() - buildStart;
+
+    long addIndexesStart = System.currentTimeMillis();
+    writer.addIndexes(directories);
+    long addIndexesTime = System.currentTimeMillis() - addIndexesStart;
+    log.info("Built {} partitions in {} ms, added them to the index in {} ms", partitions, buildTime, addIndexesTime);
+
+    for (Directory directory : directories) {
+      directory.close();
+    }
+    if (partitionRoot != null) {
+      FileUtils.deleteDirectory(partitionRoot.toFile());
+    }
+    metrics.put("partition-count", partitions);
+    metrics.put("partition-build-time", buildTime);
+    metrics.put("partition-build-times", partitionTimes);
+    metrics.put("partition-add-indexes-time", addIndexesTime);
+  }
+
+  /**
+   * Churn rounds on the built index, with a new writer that has the settings of the indexing writer
+   */
+  private static void runChurn(LiveIndexWriterConfig template, Directory directory, BenchmarkConfiguration config,
+      List<String> titles, VectorProvider vectorProvider, IndexingInstrumentation instrumentation,
+      Map<String, Object> metrics) throws IOException, InterruptedException {
+    IndexWriterConfig churnConfig = newPartitionWriterConfig(template, config, instrumentation);
+    churnConfig.setOpenMode(IndexWriterConfig.OpenMode.APPEND);
+    // The build's flushes and merges are already in metrics, churn ones are reported as churn-*
+    IndexingInstrumentation.Mark churnStart = instrumentation.mark();
+    VectorProvider queries = openQueries(config);
+    try (IndexWriter churnWriter = new IndexWriter(directory, churnConfig);
+        GroundTruth groundTruth = GroundTruth.open(config.groundTruthFile)) {
+      ChurnBenchmark.run(churnWriter, config, vectorProvider, queries, groundTruth, (id, vector) -> {
+        Document doc = new Document();
+        doc.add(new StringField("id", String.valueOf(id), Field.Store.YES));
+        if (config.hasIdDocValues())
+          doc.add(new NumericDocValuesField(IdResolver.ID_DOC_VALUES_FIELD, id));
+        doc.add(new KnnFloatVectorField(config.vectorColName, vector, EUCLIDEAN));
+        if (RESULTS_DEBUGGING)
+          doc.add(new StringField("title", titles.get(id), Field.Store.YES));
+        return doc;
+      }, instrumentation, metrics);
+      churnWriter.commit();
+    } finally {
+      queries.close();
+    }
+    // After the writer is closed, which waits for its merges
+    instrumentation.addMetrics(metrics, "churn-", churnStart);
+    // The search below uses the full ground truth, so deleted neighbors count as misses there
+    log.info("Churn done, {} documents deleted", metrics.get("churn-deleted-docs"));
+  }
+
+  /**
+   * Runs benchmark against a new reader of the built index with the query vectors, after the
+   * closed-loop search
+   */
+  private static void runOnIndex(Directory directory, BenchmarkConfiguration config, Map<String, Object> metrics,
+      QueryBenchmark.Runner benchmark) throws IOException, InterruptedException {
+    VectorProvider queries = openQueries(config);
+    try (IndexReader reader = DirectoryReader.open(directory)) {
+      benchmark.run(reader, config, queries, metrics);
+    } finally {
+      queries.close();
+    }
+  }
+
+  /**
+   * A writer config for one partition (or the churn writer), with the codec and flush/merge settings
+   * of the main writer. Their flushes and merges are recorded along with those of the main writer.
+   */
+  private static IndexWriterConfig newPartitionWriterConfig(LiveIndexWriterConfig template,
+      BenchmarkConfiguration config, IndexingInstrumentation instrumentation) {
+    IndexWriterConfig partitionConfig = new IndexWriterConfig(new StandardAnalyzer());
+    partitionConfig.setCodec(template.getCodec());
+    partitionConfig.setMaxBufferedDocs(template.getMaxBufferedDocs());
+    partitionConfig.setRAMBufferSizeMB(template.getRAMBufferSizeMB());
+    partitionConfig.setMergePolicy(newMergePolicy(config));
+    if (template.getIndexSort() != null) {
+      // addIndexes requires the partitions to have the index sort of the main index
+      partitionConfig.setIndexSort(template.getIndexSort());
+    }
+    setPerThreadRAMLimit(partitionConfig, template.getRAMPerThreadHardLimitMB());
+    instrumentation.apply(partitionConfig);
+    configureMergeScheduler(partitionConfig, config);
+    return partitionConfig;
+  }
+
+  /**
+   * nrtMode: indexes all documents while queries run against a periodically refreshed NRT searcher
+   */
+  private static void indexWhileSearching(IndexWriter writer, BenchmarkConfiguration config, List<String> titles,
+      VectorProvider vectorProvider, IndexingInstrumentation instrumentation, Map<String, Object> metrics)
+      throws IOException, InterruptedException {
+    int blockSize = config.getEffectiveIndexingBlockSize();
+    ThreadLocal<DocumentBatch> batches = ThreadLocal.withInitial(() -> config.batchedIndexing
+        ? new DocumentBatch(config, blockSize, false, vectorProvider.dimension()) : null);
+    VectorProvider queries = openQueries(config);
+    try {
+      NrtBenchmark.run(writer, config, vectorProvider, queries,
+          (block, start, count) -> indexBlock(writer, config, titles, batches.get(), block, start, count), metrics);
+    } finally {
+      queries.close();
+    }
+    metrics.put("indexing-mode", "nrt");
+    instrumentation.addMetrics(metrics);
+  }
+
+  private static void indexDocuments(IndexWriter writer, BenchmarkConfiguration config, List<String> titles,
+      VectorProvider vectorProvider, IndexingInstrumentation instrumentation, Map<String, Object> metrics) throws IOException, InterruptedException {
+
+    int threads = config.numIndexThreads;
+    log.info("IndexWriter config - MaxBufferedDocs: {}, RAMBufferSizeMB: {}", 
+            writer.getConfig().getMaxBufferedDocs(), writer.getConfig().getRAMBufferSizeMB());
+    final int numDocsToIndex = Math.min(config.numDocs, vectorProvider.size());
+    final int blockSize = config.getEffectiveIndexingBlockSize();
+    IndexingStats stats = new IndexingStats();
+    IndexCheckpointer checkpointer = config.checkpointIntervalSec > 0
+        ? IndexCheckpointer.open(writer, numDocsToIndex, config.checkpointIntervalSec) : null;
+    final int firstDoc = checkpointer != null ? checkpointer.resumeFrom() : 0;
+    log.info("Indexing mode: {}", config.batchedIndexing ? "batched addDocuments with reused documents" : "one addDocument per document");
+
+    if (config.numPartitions > 1) {
+      if (config.pipelinedIngestion) {
+        log.warn("pipelinedIngestion is not supported with numPartitions, partitions claim blocks directly");
+      }
+      indexPartitioned(writer, config, titles, vectorProvider, numDocsToIndex, blockSize, stats, instrumentation,
+          metrics);
+    } else if (config.byteVectors) {
+      if (config.pipelinedIngestion) {
+        log.warn("pipelinedIngestion is not supported with byteVectors, indexing with {} threads", threads);
+      }
+      indexByteDocuments(writer, config, (ByteVectorProvider) vectorProvider, firstDoc, numDocsToIndex, threads,
+          blockSize, stats, checkpointer);
+    } else if (config.pipelinedIngestion) {
+      // Pipeline threads are pooled inside IngestionPipeline, so their reusable documents are thread-local
+      ThreadLocal<DocumentBatch> batches = ThreadLocal.withInitial(() -> config.batchedIndexing
+          ? new DocumentBatch(config, blockSize, false, vectorProvider.dimension()) : null);
+      IngestionPipeline.Stats pipelineStats = IngestionPipeline.run(vectorProvider, numDocsToIndex, blockSize,
+          vectorProvider.dimension(), config.getEffectiveNumReaderThreads(), threads, config.getEffectivePrefetchBlocks(),
+          (block, start, count) -> stats.measure(count,
+              () -> indexBlock(writer, config, titles, batches.get(), block, start, count)));
+      metrics.put("pipeline-reader-stall-time", pipelineStats.readerStallNanos() / 1_000_000);
+      metrics.put("pipeline-indexer-stall-time", pipelineStats.indexerStallNanos() / 1_000_000);
+      metrics.put("pipeline-mean-queue-depth", pipelineStats.meanQueueDepth());
+      metrics.put("pipeline-max-queue-depth", pipelineStats.maxQueueDepth());
+    } else {
+      indexFloatDocuments(writer, config, titles, vectorProvider, firstDoc, numDocsToIndex, threads, blockSize, stats,
+          checkpointer);
+    }
+    metrics.put("indexing-mode", config.batchedIndexing ? "batched" : "single");
+    stats.addMetrics(metrics);
+    if (checkpointer != null) {
+      // The commit below carries the final checkpoint, marking the build complete
+      checkpointer.finish(numDocsToIndex);
+      checkpointer.addMetrics(metrics);
+    }
 
     if (config.forceMerge > 0) {
     	log.info("Force merge is enabled.");
+    	long forceMergeStart = System.currentTimeMillis();
     	writer.forceMerge(config.forceMerge);
+    	metrics.put("force-merge-time", System.currentTimeMillis() - forceMergeStart);
     }
     
     // log.info("Calling forceMerge(1).");
     // writer.forceMerge(1);
     log.info("Calling commit.");
     writer.commit();
+    // close waits for running merges, so every flush and merge is recorded after it
     writer.close();
+    instrumentation.addMetrics(metrics);
   }
 
   private static void search(Directory directory, BenchmarkConfiguration config, boolean useCuVS,
-      Map<String, Object> metrics, List<QueryResult> queryResults, List<int[]> groundTruth) {
+      Map<String, Object> metrics, List<QueryResult> queryResults, GroundTruth groundTruth) {
 	  
-    DB db = null;
+    VectorProvider queries = null;
+    // Searches the segments of every query concurrently, on top of the queryThreads concurrent queries
+    ExecutorService intraQueryPool = config.intraQueryThreads > 1 && !useCuVS
+        ? Executors.newFixedThreadPool(config.intraQueryThreads) : null;
     try (IndexReader indexReader = DirectoryReader.open(directory)) {
-      IndexSearcher indexSearcher = new IndexSearcher(indexReader);
+      IndexSearcher indexSearcher = IntraQueryBenchmark.newSearcher(indexReader, intraQueryPool, config);
+      metrics.put("search-slice-count", indexSearcher.getSlices().length);
+      IdResolver idResolver = IdResolver.create(indexReader, config.getEffectiveIdResolution());
+      metrics.put("id-resolution", idResolver.mode().name());
+      log.info("Resolving the ids of hits with {}", idResolver.mode());
 
-      IndexTreeList<float[]> queries;
-      String queryMapdbFile = config.queryFile + ".mapdb";
-
-      if (new File(queryMapdbFile).exists() == false) {
-        log.info("No mapdb file found for queries. Reading source files to build one ...");
-        db = DBMaker.fileDB(queryMapdbFile).make();
-        queries = db.indexTreeList("vectors", SERIALIZER.FLOAT_ARRAY).createOrOpen();
-
-              if (config.queryFile.endsWith(".csv")) {
-        for (String line : FileUtils.readFileToString(new File(config.queryFile), "UTF-8").split("\n")) {
-          queries.add(Util.parseFloatArrayFromStringArray(line));
-        }
-      } else if (config.queryFile.contains("fvecs")) {
-        FBIvecsReader.readFvecs(config.queryFile, -1, queries);
-      } else if (config.queryFile.contains("fbin")) {
-        FBIvecsReader.readFbin(config.queryFile, -1, queries);
-      } else if (config.queryFile.contains("bvecs")) {
-        FBIvecsReader.readBvecs(config.queryFile, -1, queries);
-        }
-        log.info("Mapdb file created with {} number of queries", queries.size());
-      } else {
-        log.info("Mapdb file found for queries. Loading ...");
-        db = DBMaker.fileDB(queryMapdbFile).make();
-        queries = db.indexTreeList("vectors", SERIALIZER.FLOAT_ARRAY).createOrOpen();
-        log.info("{} queries available from the mapdb file", queries.size());
-      }
+      queries = openQueries(config);
 
       int qThreads = config.queryThreads;
       if (useCuVS)
         qThreads = 1;
-      ExecutorService pool = Executors.newFixedThreadPool(qThreads);
+      // With virtualThreadQueries all queries are in flight at once, each on its own virtual thread
+      boolean virtualThreads = config.virtualThreadQueries && !useCuVS;
+      ExecutorService pool = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor()
+          : Executors.newFixedThreadPool(qThreads);
+      metrics.put("query-executor", virtualThreads ? "virtual-threads" : "fixed-pool");
+      List<Future<?>> warmUpQueries = new ArrayList<>();
       AtomicInteger queriesFinished = new AtomicInteger(0);
-      ConcurrentHashMap<Integer, Double> queryLatencies = new ConcurrentHashMap<Integer, Double>();
-      ConcurrentHashMap<Integer, Double> retrievalLatencies = new ConcurrentHashMap<Integer, Double>();
+      // Lock-free histograms, merged once the pool is done
+      LatencyHistogram.Recorder queryLatencies = new LatencyHistogram.Recorder();
+      LatencyHistogram.Recorder retrievalLatencies = new LatencyHistogram.Recorder();
 
       long startTime = System.currentTimeMillis();
       AtomicInteger queryId = new AtomicInteger(0);
-      queries.stream().limit(config.numQueriesToRun).forEach((queryVector) -> {
+      int numQueries = QueryBenchmark.numQueries(config, queries);
+      for (int q = 0; q < numQueries; q++) {
+        float[] queryVector = queries.get(q);
         // Get a unique query ID for this query before submitting to thread pool
         int currentQueryId = queryId.getAndIncrement();
-        pool.submit(() -> {
-          KnnFloatVectorQuery query;
+        if (virtualThreads && currentQueryId == config.numWarmUpQueries + 1) {
+          // Nothing queues behind the warm-up queries on virtual threads, so they must be done before
+          // the measured queries start, or they would warm up nothing
+          for (Future<?> warmUpQuery : warmUpQueries) {
+            warmUpQuery.get();
+          }
+        }
+        Future<?> submitted = pool.submit(() -> {
+          Query query;
 
-          if (useCuVS) {
+          if (useCuVS && !config.byteVectors) {
             int effectiveEfSearch = config.getEffectiveEfSearch();
             query = new GPUKnnFloatVectorQuery(config.vectorColName, queryVector, effectiveEfSearch, null, config.cagraITopK,
                                                config.cagraSearchWidth);
           } else {
-              int effectiveEfSearch = config.getEffectiveEfSearch();
-              query = new KnnFloatVectorQuery(config.vectorColName, queryVector, effectiveEfSearch);   
+            query = Util.newKnnQuery(config, queryVector);
           }
 
           TopDocs topDocs;
@@ -531,10 +1101,11 @@ public class LuceneCuvsBenchmarks {
           } catch (IOException e) {
             throw new RuntimeException("Problem during executing a query: ", e);
           }
-          double searchTimeTakenMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - searchStartTime);
+          long searchTimeTakenNanos = System.nanoTime() - searchStartTime;
+          double searchTimeTakenMs = searchTimeTakenNanos / 1_000_000.0;
           // log.info("End to end search took: " + searchTimeTakenMs);
           if (currentQueryId > config.numWarmUpQueries) {
-        	  queryLatencies.put(queryId.get(), searchTimeTakenMs);
+        	  queryLatencies.record(searchTimeTakenNanos);
           }
           int finishedCount = queriesFinished.incrementAndGet();
 
@@ -548,59 +1119,71 @@ public class LuceneCuvsBenchmarks {
           List<Float> scores = new ArrayList<>();
 
           // Debug: Log search results for first query
-          if (queryId.get() == 0) {
+          if (currentQueryId == 0) {
             log.info("Debug: First query returned " + hits.length + " hits (ef-search candidates)");
             log.info("Debug: Will select top " + config.topK + " from " + hits.length + " candidates");
           }
           int numResultsToTake = Math.min(config.topK, hits.length);
           long retrievalStartTime = System.nanoTime();
+          int[] ids = new int[numResultsToTake];
+          try {
+            idResolver.resolve(hits, numResultsToTake, ids);
+          } catch (IOException e) {
+            throw new RuntimeException("Problem during resolving the ids of hits: ", e);
+          }
           for (int i = 0; i < numResultsToTake; i++) {
-            ScoreDoc hit = hits[i];
-            try {
-              Document d = indexReader.storedFields().document(hit.doc);
-              neighbors.add(Integer.parseInt(d.get("id")));
-            } catch (IOException e) {
-              e.printStackTrace();
-            }
-            scores.add(hit.score);
+            neighbors.add(ids[i]);
+            scores.add(hits[i].score);
           }
-          double retrievalTimeTakenMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - retrievalStartTime);
+          // Fractional, retrieving the ids of topK hits takes well under a millisecond
+          long retrievalTimeTakenNanos = System.nanoTime() - retrievalStartTime;
+          double retrievalTimeTakenMs = retrievalTimeTakenNanos / 1_000_000.0;
           if (currentQueryId > config.numWarmUpQueries) {
-        	  retrievalLatencies.put(queryId.get(), retrievalTimeTakenMs);
+        	  retrievalLatencies.record(retrievalTimeTakenNanos);
           }          
           
           // Debug: Log results for all queries
           log.info("Query " + currentQueryId + " - First 5 neighbors: " + neighbors.subList(0, Math.min(5, neighbors.size())));
           log.info("Query " + currentQueryId + " - First 5 distances: " + scores.subList(0, Math.min(5, scores.size())));
-          int[] expectedNeighbors = groundTruth.get(currentQueryId);
-          log.info("Query " + currentQueryId + " - Expected neighbors: " + java.util.Arrays.toString(java.util.Arrays.copyOf(expectedNeighbors, Math.min(5, expectedNeighbors.length))));
+          GroundTruth.Row expectedNeighbors = groundTruth.row(currentQueryId);
+          log.info("Query " + currentQueryId + " - Expected neighbors: " + java.util.Arrays.toString(expectedNeighbors.head(5)));
 
           var s = useCuVS ? "lucene_cuvs" : "lucene_hnsw";
           if (currentQueryId > config.numWarmUpQueries) {
-	          QueryResult result = new QueryResult(s, currentQueryId, neighbors, groundTruth.get(currentQueryId), scores,
-	              searchTimeTakenMs);          
+	          QueryResult result = new QueryResult(s, currentQueryId, neighbors, expectedNeighbors, scores,
+	              searchTimeTakenMs, retrievalTimeTakenMs);          
 	          queryResults.add(result);
           } else {
         	  log.info("Skipping warmup query: {}", currentQueryId);
           }
         });
-      });
+        if (currentQueryId <= config.numWarmUpQueries) {
+          warmUpQueries.add(submitted);
+        }
+      }
 
       pool.shutdown();
       pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
 
       long endTime = System.currentTimeMillis();
 
+      LatencyHistogram searchLatencies = queryLatencies.merged();
+      LatencyHistogram retrievalLatencyHistogram = retrievalLatencies.merged();
       metrics.put((useCuVS ? "cuvs" : "hnsw") + "-query-time", (endTime - startTime));
+      // The wall time covers the warm-up queries (run first with virtual threads, queued first on the
+      // fixed pool), so the throughput counts them too, like the client simulation
       metrics.put((useCuVS ? "cuvs" : "hnsw") + "-query-throughput",
-          (queryLatencies.size() / ((endTime - startTime) / 1000.0)));
-      double avgLatency = new ArrayList<>(queryLatencies.values()).stream().reduce(0.0, Double::sum)
-          / queryLatencies.size();
-      double avgRetLatency = new ArrayList<>(retrievalLatencies.values()).stream().reduce(0.0, Double::sum)
-              / retrievalLatencies.size();
+          (queriesFinished.get() / ((endTime - startTime) / 1000.0)));
+      double avgLatency = searchLatencies.meanNanos() / 1e6;
+      double avgRetLatency = retrievalLatencyHistogram.meanNanos() / 1e6;
 
       metrics.put((useCuVS ? "cuvs" : "hnsw") + "-mean-latency", avgLatency);
       metrics.put((useCuVS ? "cuvs" : "hnsw") + "-mean-retrieval-latency", avgRetLatency);
+      searchLatencies.addPercentiles(metrics, (useCuVS ? "cuvs" : "hnsw") + "-latency");
+      retrievalLatencyHistogram.addPercentiles(metrics, (useCuVS ? "cuvs" : "hnsw") + "-retrieval-latency");
+      for (QueryResult result : queryResults) {
+        result.setLatencyPercentile(searchLatencies);
+      }
 
       // Add segment count to metrics
       int segmentCount = indexReader.leaves().size();
@@ -610,21 +1193,77 @@ public class LuceneCuvsBenchmarks {
       e.printStackTrace();
       log.error("Exception during querying", e);
     } finally {
-      if (db != null) {
-        db.close();
+      if (intraQueryPool != null) {
+        intraQueryPool.shutdown();
+      }
+      if (queries != null) {
+        try {
+          queries.close();
+        } catch (IOException e) {
+          log.warn("Failed to close the query vectors", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Maps the query vectors, parsing the query file into a vector cache first if there is no valid one
+   */
+  private static VectorProvider openQueries(BenchmarkConfiguration config) throws IOException {
+    if (config.queryFile.endsWith(".u8bin") || config.queryFile.endsWith(".i8bin")) {
+      return new MappedByteVectorProvider(config.queryFile, -1);
+    }
+    String queryCacheFile = config.queryFile + VectorCache.EXTENSION;
+    if (!VectorCache.isValid(queryCacheFile, config.queryFile, -1)) {
+      log.info("No valid vector cache found for queries. Reading source files to build one ...");
+      try (VectorCache.Writer writer = VectorCache.create(queryCacheFile, config.queryFile, -1)) {
+        List<float[]> queries = writer.asList();
+        if (config.queryFile.endsWith(".csv")) {
+          for (String line : FileUtils.readFileToString(new File(config.queryFile), "UTF-8").split("\n")) {
+            queries.add(Util.parseFloatArrayFromStringArray(line));
+          }
+        } else if (config.queryFile.contains("fvecs")) {
+          FBIvecsReader.readFvecs(config.queryFile, -1, queries);
+        } else if (config.queryFile.contains("fbin")) {
+          FBIvecsReader.readFbin(config.queryFile, -1, queries);
+        } else if (config.queryFile.contains("bvecs")) {
+          FBIvecsReader.readBvecs(config.queryFile, -1, queries);
+        }
+        writer.commit();
+        log.info("Vector cache created with {} number of queries", writer.count());
       }
     }
+    VectorProvider queries = VectorCache.open(queryCacheFile, -1);
+    log.info("{} queries available from the vector cache", queries.size());
+    return queries;
   }
 
-  private static Lucene101Codec getLuceneHnswCodec(BenchmarkConfiguration config) {
+  private static Lucene101Codec getLuceneHnswCodec(BenchmarkConfiguration config,
+      IndexingInstrumentation instrumentation, ExecutorService mergeExecutor) {
+    int mergeWorkers = mergeExecutor != null ? config.getEffectiveHnswNumMergeWorkers() : 1;
     return new Lucene101Codec(Mode.BEST_SPEED) {
 
       @Override
       public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
-        KnnVectorsFormat knnFormat = new Lucene99HnswVectorsFormat(config.hnswMaxConn, config.hnswBeamWidth);
+        KnnVectorsFormat knnFormat;
+        if (config.isScalarQuantized()) {
+          // The graph is built and searched over int7/int4 quantized vectors (.veq), the raw float
+          // vectors (.vec) are kept for merges and rescoring
+          knnFormat = new Lucene99HnswScalarQuantizedVectorsFormat(config.hnswMaxConn, config.hnswBeamWidth, mergeWorkers,
+              config.getEffectiveQuantizationBits(), config.quantizationCompress, config.quantizationConfidenceInterval,
+              mergeExecutor);
+        } else if (config.isBinaryQuantized()) {
+          // 1 bit per dimension (.veb) with corrective terms, raw float vectors (.vec) kept alongside
+          knnFormat = new Lucene102HnswBinaryQuantizedVectorsFormat(config.hnswMaxConn, config.hnswBeamWidth, mergeWorkers,
+              mergeExecutor);
+        } else {
+          // The HNSW format stores the vectors with the field's encoding, so byteVectors (KnnByteVectorField)
+          // get a graph over 1-byte components with the same maxConn/beamWidth
+          knnFormat = new Lucene99HnswVectorsFormat(config.hnswMaxConn, config.hnswBeamWidth, mergeWorkers, mergeExecutor);
+        }
         // KnnVectorsFormat knnFormat = new Lucene99HnswVectorsFormat(DEFAULT_MAX_CONN,
         // DEFAULT_BEAM_WIDTH);
-        return new HighDimensionKnnVectorsFormat(knnFormat, config.vectorDimension);
+        return new HighDimensionKnnVectorsFormat(knnFormat, config.vectorDimension, instrumentation);
       }
     };
   }
@@ -643,19 +1282,86 @@ public class LuceneCuvsBenchmarks {
 
   // Removed ConfigurableCuVSCodec - using CuVSCPUSearchCodec directly with better error handling
 
+  /**
+   * Reusable documents for batchedIndexing. Every slot keeps its Document and its id and vector
+   * fields; filling a block only replaces the field values, and IndexWriter copies the values
+   * while indexing, so the same instances are reused for every block of a thread.
+   */
+  private static final class DocumentBatch {
+    private final List<Document> docs;
+    private final StringField[] ids;
+    private final NumericDocValuesField[] idValues; // null unless the id_dv field is indexed
+    private final Field[] vectors;
+    private final StringField[] titles;
+
+    DocumentBatch(BenchmarkConfiguration config, int size, boolean byteVectors, int dimension) {
+      Document[] docs = new Document[size];
+      this.ids = new StringField[size];
+      this.idValues = config.hasIdDocValues() ? new NumericDocValuesField[size] : null;
+      this.vectors = new Field[size];
+      this.titles = RESULTS_DEBUGGING ? new StringField[size] : null;
+      for (int i = 0; i < size; i++) {
+        docs[i] = new Document();
+        ids[i] = new StringField("id", "", Field.Store.YES);
+        docs[i].add(ids[i]);
+        if (idValues != null) {
+          idValues[i] = new NumericDocValuesField(IdResolver.ID_DOC_VALUES_FIELD, 0L);
+          docs[i].add(idValues[i]);
+        }
+        vectors[i] = byteVectors ? new KnnByteVectorField(config.vectorColName, new byte[dimension], EUCLIDEAN)
+            : new KnnFloatVectorField(config.vectorColName, new float[dimension], EUCLIDEAN);
+        docs[i].add(vectors[i]);
+        if (titles != null) {
+          titles[i] = new StringField("title", "", Field.Store.YES);
+          docs[i].add(titles[i]);
+        }
+      }
+      this.docs = Arrays.asList(docs);
+    }
+
+    List<Document> fill(float[][] block, List<String> titleValues, int start, int count) {
+      for (int j = 0; j < count; j++) {
+        ids[j].setStringValue(String.valueOf(start + j));
+        if (idValues != null) {
+          idValues[j].setLongValue(start + j);
+        }
+        ((KnnFloatVectorField) vectors[j]).setVectorValue(block[j]);
+        if (titles != null) {
+          titles[j].setStringValue(titleValues.get(start + j));
+        }
+      }
+      return docs.subList(0, count);
+    }
+
+    List<Document> fill(byte[][] block, int start, int count) {
+      for (int j = 0; j < count; j++) {
+        ids[j].setStringValue(String.valueOf(start + j));
+        if (idValues != null) {
+          idValues[j].setLongValue(start + j);
+        }
+        ((KnnByteVectorField) vectors[j]).setVectorValue(block[j]);
+      }
+      return docs.subList(0, count);
+    }
+  }
+
   private static class HighDimensionKnnVectorsFormat extends KnnVectorsFormat {
     private final KnnVectorsFormat knnFormat;
     private final int maxDimensions;
+    private final IndexingInstrumentation instrumentation; // times vector flushes and merges, may be null
 
-    public HighDimensionKnnVectorsFormat(KnnVectorsFormat knnFormat, int maxDimensions) {
+    public HighDimensionKnnVectorsFormat(KnnVectorsFormat knnFormat, int maxDimensions,
+        IndexingInstrumentation instrumentation) {
       super(knnFormat.getName());
       this.knnFormat = knnFormat;
       this.maxDimensions = maxDimensions;
+      this.instrumentation = instrumentation;
     }
 
     @Override
     public KnnVectorsWriter fieldsWriter(SegmentWriteState state) throws IOException {
-      return knnFormat.fieldsWriter(state);
+      KnnVectorsWriter writer = knnFormat.fieldsWriter(state);
+      return instrumentation != null ? instrumentation.wrap(writer) : writer;
     }
 
     @Override
@@ -0,0 +1,144 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Byte-native provider that memory-maps an uncompressed .bvecs (uint8, per-vector dimension prefix),
+ * .u8bin (uint8) or .i8bin (int8) file, the latter two with a num_vectors, dimension header.
+ *
+ * Unsigned components u are encoded as the signed byte u - 128. Shifting every component by the
+ * same amount leaves all euclidean distances unchanged, so the byte index returns the same
+ * neighbors as a float index of the original values. Query vectors go through toByteVector.
+ */
+public class MappedByteVectorProvider implements ByteVectorProvider {
+    private static final Logger log = LoggerFactory.getLogger(MappedByteVectorProvider.class.getName());
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final boolean unsigned;
+    private final int dimension;
+    private final int vectorCount;
+    private final long headerSize;
+    private final long prefixSize;
+    private final long vectorSize;
+
+    public MappedByteVectorProvider(String filePath, int maxVectors) throws IOException {
+        if (!supports(filePath)) {
+            throw new IllegalArgumentException("Byte vectors need an uncompressed .bvecs, .u8bin or .i8bin file: " + filePath);
+        }
+        this.unsigned = isUnsigned(filePath);
+        this.arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            this.segment = channel.map(MapMode.READ_ONLY, 0, channel.size(), arena);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+
+        long totalVectors;
+        if (filePath.endsWith(".bvecs")) {
+            this.dimension = segment.get(MappedVectorProvider.LE_INT, 0);
+            this.headerSize = 0;
+            this.prefixSize = 4;
+            this.vectorSize = prefixSize + dimension;
+            totalVectors = segment.byteSize() / vectorSize;
+        } else {
+            int numVectors = segment.get(MappedVectorProvider.LE_INT, 0);
+            this.dimension = segment.get(MappedVectorProvider.LE_INT, 4);
+            this.headerSize = 8;
+            this.prefixSize = 0;
+            this.vectorSize = dimension;
+            totalVectors = Math.min(numVectors, (segment.byteSize() - headerSize) / vectorSize);
+            log.info("File header - total vectors: {}, dimension: {}", numVectors, dimension);
+        }
+        this.vectorCount = (int) (maxVectors > 0 ? Math.min(totalVectors, maxVectors) : totalVectors);
+
+        log.info("MappedByteVectorProvider initialized for {}: {} vectors, {} dimensions, {} components, mapped {} bytes",
+                 filePath, vectorCount, dimension, unsigned ? "uint8" : "int8", segment.byteSize());
+    }
+
+    /**
+     * Whether filePath is a file this provider can map
+     */
+    public static boolean supports(String filePath) {
+        return filePath.endsWith(".bvecs") || filePath.endsWith(".u8bin") || filePath.endsWith(".i8bin");
+    }
+
+    /**
+     * Whether the components of filePath are unsigned (and get shifted by -128)
+     */
+    public static boolean isUnsigned(String filePath) {
+        return !filePath.endsWith(".i8bin");
+    }
+
+    /**
+     * Encodes a float vector holding integral component values (such as a bvecs query read as
+     * floats) the same way as the vectors of a file with the given signedness
+     */
+    public static byte[] toByteVector(float[] vector, boolean unsigned) {
+        byte[] bytes = new byte[vector.length];
+        int shift = unsigned ? 128 : 0;
+        for (int i = 0; i < vector.length; i++) {
+            bytes[i] = (byte) Math.max(-128, Math.min(127, Math.round(vector[i]) - shift));
+        }
+        return bytes;
+    }
+
+    private long offset(int index) {
+        if (index < 0 || index >= vectorCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds [0, " + vectorCount + ")");
+        }
+        return headerSize + index * vectorSize + prefixSize;
+    }
+
+    @Override
+    public void readInto(int index, byte[] dest) throws IOException {
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, offset(index), dest, 0, dimension);
+        if (unsigned) {
+            for (int i = 0; i < dimension; i++) {
+                dest[i] ^= (byte) 0x80; // u - 128 for u in [0, 255]
+            }
+        }
+    }
+
+    @Override
+    public float[] get(int index) throws IOException {
+        float[] vector = new float[dimension];
+        readInto(index, vector);
+        return vector;
+    }
+
+    @Override
+    public void readInto(int index, float[] dest) throws IOException {
+        long offset = offset(index);
+        for (int i = 0; i < dimension; i++) {
+            byte b = segment.get(ValueLayout.JAVA_BYTE, offset + i);
+            dest[i] = unsigned ? b & 0xff : b;
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        return vectorCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        arena.close();
+    }
+}
@@ -0,0 +1,190 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.searchscale.lucene.cuvs.benchmarks.StreamingVectorProvider.FileFormat;
+
+/**
+ * Vector provider that memory-maps an uncompressed .fvecs, .fbin or .bvecs file once and decodes
+ * vectors straight from the mapping. A single MemorySegment covers the whole file, so there is no
+ * 2GB limit and no per-read syscall, channel or buffer allocation.
+ */
+public class MappedVectorProvider implements VectorProvider {
+    private static final Logger log = LoggerFactory.getLogger(MappedVectorProvider.class.getName());
+
+    static final ValueLayout.OfFloat LE_FLOAT = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfInt LE_INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private final String filePath;
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final FileFormat format;
+    private final int dimension;
+    private final int vectorCount;
+    private final long headerSize; // file header (8 bytes for fbin: num_vectors + dimension)
+    private final long prefixSize; // per-vector dimension prefix (4 bytes for fvecs/bvecs)
+    private final long vectorSize; // size of one vector record in bytes, including the prefix
+
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+
+    public MappedVectorProvider(String filePath, int maxVectors) throws IOException {
+        if (!supports(filePath)) {
+            throw new IllegalArgumentException("Unsupported file for memory mapping: " + filePath);
+        }
+        this.filePath = filePath;
+        this.format = FileFormat.fromPath(filePath);
+        this.arena = Arena.ofShared();
+        this.segment = map(filePath, arena);
+
+        long totalVectors;
+        if (format == FileFormat.FBIN) {
+            int numVectors = segment.get(LE_INT, 0);
+            this.dimension = segment.get(LE_INT, 4);
+            this.headerSize = 8;
+            this.prefixSize = 0;
+            this.vectorSize = 4L * dimension;
+            totalVectors = Math.min(numVectors, (segment.byteSize() - headerSize) / vectorSize);
+            log.info("File header - total vectors: {}, dimension: {}", numVectors, dimension);
+        } else {
+            this.dimension = segment.get(LE_INT, 0);
+            this.headerSize = 0;
+            this.prefixSize = 4;
+            this.vectorSize = prefixSize + (long) dimension * (format == FileFormat.BVECS ? 1 : 4);
+            totalVectors = segment.byteSize() / vectorSize;
+        }
+        this.vectorCount = (int) (maxVectors > 0 ? Math.min(totalVectors, maxVectors) : totalVectors);
+
+        log.info("MappedVectorProvider initialized: {} vectors, {} dimensions, format: {}, mapped {} bytes",
+                 vectorCount, dimension, format, segment.byteSize());
+    }
+
+    /**
+     * Maps count vectors of raw little-endian float32 values (no per-vector prefix) that start at
+     * dataOffset, as written by VectorCache
+     */
+    MappedVectorProvider(String filePath, long dataOffset, int dimension, int count, int maxVectors) throws IOException {
+        this.filePath = filePath;
+        this.format = FileFormat.FBIN;
+        this.arena = Arena.ofShared();
+        this.segment = map(filePath, arena);
+        this.dimension = dimension;
+        this.headerSize = dataOffset;
+        this.prefixSize = 0;
+        this.vectorSize = 4L * dimension;
+        this.vectorCount = maxVectors > 0 ? Math.min(count, maxVectors) : count;
+        if (headerSize + vectorCount * vectorSize > segment.byteSize()) {
+            arena.close();
+            throw new IOException("File " + filePath + " is too short for " + vectorCount + " vectors");
+        }
+    }
+
+    private static MemorySegment map(String filePath, Arena arena) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            return channel.map(MapMode.READ_ONLY, 0, channel.size(), arena);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Whether the given file can be memory-mapped by this provider (uncompressed fvecs, fbin or bvecs)
+     */
+    public static boolean supports(String filePath) {
+        return !filePath.endsWith(".gz")
+            && (filePath.contains("fvecs") || filePath.contains("fbin") || filePath.contains("bvecs"));
+    }
+
+    @Override
+    public float[] get(int index) throws IOException {
+        if (index < 0 || index >= vectorCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds [0, " + vectorCount + ")");
+        }
+        float[] vector = new float[dimension];
+        decode(index, vector);
+        return vector;
+    }
+
+    @Override
+    public void readInto(int index, float[] dest) throws IOException {
+        if (index < 0 || index >= vectorCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds [0, " + vectorCount + ")");
+        }
+        decode(index, dest);
+    }
+
+    @Override
+    public void readRange(int start, int count, float[][] dest) throws IOException {
+        VectorProvider.checkRange(start, count, vectorCount);
+        for (int i = 0; i < count; i++) {
+            decode(start + i, dest[i]);
+        }
+    }
+
+    private void decode(int index, float[] vector) throws IOException {
+        long start = System.nanoTime();
+        long position = headerSize + index * vectorSize;
+
+        if (prefixSize > 0) {
+            int fileDimension = segment.get(LE_INT, position);
+            if (fileDimension != dimension) {
+                throw new IOException("Dimension mismatch at vector " + index +
+                        ": expected " + dimension + ", got " + fileDimension);
+            }
+        }
+        long dataPosition = position + prefixSize;
+        if (format == FileFormat.BVECS) {
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = segment.get(ValueLayout.JAVA_BYTE, dataPosition + i) & 0xff;
+            }
+        } else {
+            MemorySegment.copy(segment, LE_FLOAT, dataPosition, vector, 0, dimension);
+        }
+
+        bytesRead.add(vectorSize);
+        readNanos.add(System.nanoTime() - start);
+    }
+
+    @Override
+    public int size() {
+        return vectorCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.info("Unmapping {}", filePath);
+        arena.close();
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Total number of bytes decoded from the mapping so far
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Total time spent decoding vectors, summed over all reading threads
+     */
+    public long getReadNanos() {
+        return readNanos.sum();
+    }
+}
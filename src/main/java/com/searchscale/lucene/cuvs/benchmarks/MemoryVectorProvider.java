@@ -20,11 +20,31 @@ public class MemoryVectorProvider implements VectorProvider {
         }
         return vectors.get(index);
     }
+
+    @Override
+    public void readInto(int index, float[] dest) throws IOException {
+        float[] vector = get(index);
+        System.arraycopy(vector, 0, dest, 0, vector.length);
+    }
+
+    @Override
+    public void readRange(int start, int count, float[][] dest) throws IOException {
+        VectorProvider.checkRange(start, count, vectors.size());
+        for (int i = 0; i < count; i++) {
+            float[] vector = vectors.get(start + i);
+            System.arraycopy(vector, 0, dest[i], 0, vector.length);
+        }
+    }
     
     @Override
     public int size() {
         return vectors.size();
     }
+
+    @Override
+    public int dimension() {
+        return vectors.isEmpty() ? 0 : vectors.get(0).length;
+    }
     
     @Override
     public void close() throws IOException {
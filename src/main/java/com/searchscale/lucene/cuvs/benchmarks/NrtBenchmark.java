@@ -0,0 +1,317 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import static org.apache.lucene.search.DocIdSetIterator.NO_MORE_DOCS;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.KnnVectorValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.Bits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mixed workload: indexing threads add vectors at a configurable rate while query threads search an
+ * NRT searcher that a background thread refreshes periodically. Every reported window has the
+ * indexing throughput, query latency percentiles, refresh latencies and the recall of a sample of
+ * queries against an exact search over the documents visible to the searcher that ran the query.
+ */
+public class NrtBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(NrtBenchmark.class.getName());
+
+  /** Counters of one reporting window */
+  private static final class Window {
+    final LongAdder docsIndexed = new LongAdder();
+    final LatencyHistogram latencies = new LatencyHistogram();
+    final LatencyHistogram refreshLatencies = new LatencyHistogram();
+    double recallSum;
+    int recallCount;
+    long visibleDocs;
+
+    synchronized void addQuery(long latencyNanos) {
+      latencies.record(latencyNanos);
+    }
+
+    synchronized void addRecall(double recall) {
+      recallSum += recall;
+      recallCount++;
+    }
+
+    synchronized void addRefresh(long latencyNanos, long visible) {
+      refreshLatencies.record(latencyNanos);
+      visibleDocs = Math.max(visibleDocs, visible);
+    }
+  }
+
+  private final BenchmarkConfiguration config;
+  private final long startNanos = System.nanoTime();
+  private final long windowNanos;
+  private final Map<Integer, Window> windows = new ConcurrentHashMap<>();
+
+  private NrtBenchmark(BenchmarkConfiguration config) {
+    this.config = config;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(config.getEffectiveNrtReportIntervalMs());
+  }
+
+  private Window window() {
+    return windows.computeIfAbsent((int) ((System.nanoTime() - startNanos) / windowNanos), w -> new Window());
+  }
+
+  /**
+   * Indexes vectors [0, numDocs) of vectorProvider through indexer while searching queries, then
+   * commits and closes writer. Adds the nrt-* metrics.
+   */
+  public static void run(IndexWriter writer, BenchmarkConfiguration config, VectorProvider vectorProvider,
+      VectorProvider queries, IngestionPipeline.BlockConsumer indexer, Map<String, Object> metrics)
+      throws IOException, InterruptedException {
+    new NrtBenchmark(config).run(writer, vectorProvider, queries, indexer, metrics);
+  }
+
+  private void run(IndexWriter writer, VectorProvider vectorProvider, VectorProvider queries,
+      IngestionPipeline.BlockConsumer indexer, Map<String, Object> metrics) throws IOException, InterruptedException {
+    int numDocs = Math.min(config.numDocs, vectorProvider.size());
+    int numQueries = QueryBenchmark.numQueries(config, queries);
+    int blockSize = config.getEffectiveIndexingBlockSize();
+    int indexThreads = Math.max(1, config.numIndexThreads);
+    int queryThreads = Math.max(1, config.queryThreads);
+    long refreshIntervalMs = config.getEffectiveNrtRefreshIntervalMs();
+    int recallSampleRate = config.getEffectiveNrtRecallSampleRate();
+    // Blocks are admitted at the configured rate, each indexing thread waits for its block's slot
+    long nanosPerBlock = config.nrtIndexingRate > 0 ? (long) (1e9 * blockSize / config.nrtIndexingRate) : 0;
+
+    SearcherManager searcherManager = new SearcherManager(writer, null);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    AtomicBoolean indexingDone = new AtomicBoolean();
+    log.info("Starting NRT benchmark: {} docs with {} indexing threads at {} docs/s, {} query threads, refresh every {} ms",
+        numDocs, indexThreads, config.nrtIndexingRate > 0 ? config.nrtIndexingRate : "unlimited", queryThreads,
+        refreshIntervalMs);
+
+    ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor();
+    refresher.scheduleWithFixedDelay(() -> {
+      try {
+        refresh(searcherManager);
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+      }
+    }, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+
+    ExecutorService searchers = Executors.newFixedThreadPool(queryThreads);
+    AtomicInteger nextQuery = new AtomicInteger();
+    for (int i = 0; i < queryThreads; i++) {
+      searchers.submit(() -> {
+        try {
+          while (!indexingDone.get() && failure.get() == null) {
+            int q = nextQuery.getAndIncrement();
+            search(searcherManager, queries.get(q % numQueries), q % recallSampleRate == 0);
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        }
+      });
+    }
+
+    long indexStart = System.nanoTime();
+    ExecutorService indexers = Executors.newFixedThreadPool(indexThreads);
+    AtomicInteger nextBlockStart = new AtomicInteger(0);
+    AtomicLong nextSlot = new AtomicLong(indexStart);
+    for (int i = 0; i < indexThreads; i++) {
+      indexers.submit(() -> {
+        float[][] block = new float[blockSize][vectorProvider.dimension()];
+        try {
+          while (failure.get() == null) {
+            int start = nextBlockStart.getAndAdd(blockSize);
+            if (start >= numDocs) {
+              break;
+            }
+            if (nanosPerBlock > 0) {
+              long slot = nextSlot.getAndAdd(nanosPerBlock);
+              for (long wait = slot - System.nanoTime(); wait > 0; wait = slot - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+              }
+            }
+            int count = Math.min(blockSize, numDocs - start);
+            vectorProvider.readRange(start, count, block);
+            indexer.accept(block, start, count);
+            window().docsIndexed.add(count);
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        }
+      });
+    }
+    indexers.shutdown();
+    indexers.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+    long indexNanos = System.nanoTime() - indexStart;
+
+    indexingDone.set(true);
+    searchers.shutdown();
+    searchers.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+    refresher.shutdown();
+    refresher.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+    if (failure.get() == null) {
+      refresh(searcherManager); // the last window shows every document visible
+    }
+    searcherManager.close();
+
+    Throwable t = failure.get();
+    if (t instanceof IOException e) {
+      throw e;
+    } else if (t instanceof RuntimeException e) {
+      throw e;
+    } else if (t != null) {
+      throw new IOException("NRT benchmark failed", t);
+    }
+
+    writer.commit();
+    writer.close();
+    addMetrics(metrics, numDocs, indexNanos);
+  }
+
+  private void refresh(SearcherManager searcherManager) throws IOException {
+    long start = System.nanoTime();
+    searcherManager.maybeRefreshBlocking();
+    long latencyNanos = System.nanoTime() - start;
+    IndexSearcher searcher = searcherManager.acquire();
+    try {
+      window().addRefresh(latencyNanos, searcher.getIndexReader().numDocs());
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
+  private void search(SearcherManager searcherManager, float[] queryVector, boolean measureRecall) throws IOException {
+    IndexSearcher searcher = searcherManager.acquire();
+    try {
+      long start = System.nanoTime();
+      TopDocs topDocs = searcher.search(
+          new KnnFloatVectorQuery(config.vectorColName, queryVector, config.getEffectiveEfSearch()), config.topK);
+      window().addQuery(System.nanoTime() - start);
+
+      if (measureRecall) {
+        Set<Integer> expected = exactNeighbors(searcher, queryVector);
+        if (!expected.isEmpty()) {
+          int matches = 0;
+          for (ScoreDoc hit : topDocs.scoreDocs) {
+            if (expected.contains(hit.doc)) {
+              matches++;
+            }
+          }
+          window().addRecall(matches / (double) expected.size());
+        }
+      }
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
+  /**
+   * The topK nearest live documents of the searcher's reader by brute force, as global doc ids
+   */
+  private Set<Integer> exactNeighbors(IndexSearcher searcher, float[] queryVector) throws IOException {
+    VectorSimilarityFunction similarity = VectorSimilarityFunction.EUCLIDEAN;
+    PriorityQueue<ScoreDoc> top = new PriorityQueue<>(config.topK + 1, (a, b) -> Float.compare(a.score, b.score));
+    for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+      FloatVectorValues values = leaf.reader().getFloatVectorValues(config.vectorColName);
+      if (values == null) {
+        continue;
+      }
+      Bits liveDocs = leaf.reader().getLiveDocs();
+      KnnVectorValues.DocIndexIterator it = values.iterator();
+      for (int doc = it.nextDoc(); doc != NO_MORE_DOCS; doc = it.nextDoc()) {
+        if (liveDocs != null && !liveDocs.get(doc)) {
+          continue;
+        }
+        float score = similarity.compare(queryVector, values.vectorValue(it.index()));
+        if (top.size() < config.topK) {
+          top.add(new ScoreDoc(leaf.docBase + doc, score));
+        } else if (score > top.peek().score) {
+          top.poll();
+          top.add(new ScoreDoc(leaf.docBase + doc, score));
+        }
+      }
+    }
+    Set<Integer> docs = new HashSet<>();
+    for (ScoreDoc scoreDoc : top) {
+      docs.add(scoreDoc.doc);
+    }
+    return docs;
+  }
+
+  private void addMetrics(Map<String, Object> metrics, int numDocs, long indexNanos) {
+    List<Map<String, Object>> report = new ArrayList<>();
+    LatencyHistogram allLatencies = new LatencyHistogram();
+    LatencyHistogram allRefreshes = new LatencyHistogram();
+    double recallSum = 0;
+    int recallCount = 0;
+    double windowSeconds = windowNanos / 1e9;
+    int lastWindow = windows.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1);
+    long visibleDocs = 0;
+    for (int w = 0; w <= lastWindow; w++) {
+      Window window = windows.getOrDefault(w, new Window());
+      visibleDocs = Math.max(visibleDocs, window.visibleDocs); // unchanged in windows without a refresh
+      Map<String, Object> entry = new LinkedHashMap<>();
+      entry.put("window", w);
+      entry.put("start-ms", (long) (w * windowSeconds * 1000));
+      entry.put("docs-indexed", window.docsIndexed.sum());
+      entry.put("indexing-docs-per-sec", window.docsIndexed.sum() / windowSeconds);
+      entry.put("visible-docs", visibleDocs);
+      entry.put("queries", window.latencies.count());
+      window.latencies.addPercentiles(entry, "latency");
+      entry.put("refreshes", window.refreshLatencies.count());
+      window.refreshLatencies.addPercentiles(entry, "refresh-latency");
+      if (window.recallCount > 0) {
+        entry.put("recall", window.recallSum / window.recallCount);
+        entry.put("recall-samples", window.recallCount);
+      }
+      report.add(entry);
+      allLatencies.add(window.latencies);
+      allRefreshes.add(window.refreshLatencies);
+      recallSum += window.recallSum;
+      recallCount += window.recallCount;
+    }
+
+    metrics.put("nrt-windows", report);
+    metrics.put("nrt-window-ms", windowNanos / 1_000_000);
+    metrics.put("nrt-indexing-time", indexNanos / 1_000_000);
+    metrics.put("nrt-indexing-throughput", numDocs / (indexNanos / 1e9));
+    metrics.put("nrt-query-count", allLatencies.count());
+    Map<String, Object> overall = new LinkedHashMap<>();
+    allLatencies.addPercentiles(overall, "latency");
+    allRefreshes.addPercentiles(overall, "refresh-latency");
+    overall.forEach((key, value) -> metrics.put("nrt-" + key, value));
+    metrics.put("nrt-refresh-count", allRefreshes.count());
+    if (recallCount > 0) {
+      metrics.put("nrt-mean-recall", recallSum / recallCount);
+    }
+    log.info("NRT benchmark: {} docs in {} ms ({} docs/s), {} queries, mean recall of visible docs {}, {} refreshes",
+        numDocs, indexNanos / 1_000_000, String.format("%.0f", numDocs / (indexNanos / 1e9)), allLatencies.count(),
+        recallCount > 0 ? String.format("%.4f", recallSum / recallCount) : "n/a", allRefreshes.count());
+  }
+}
@@ -0,0 +1,132 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory vector provider that keeps all vectors in one contiguous off-heap segment
+ * (numVectors * dimension floats), so the heap holds no per-vector arrays for the GC to scan
+ */
+public class OffHeapVectorProvider implements VectorProvider {
+    private static final Logger log = LoggerFactory.getLogger(OffHeapVectorProvider.class.getName());
+
+    private static final int LOAD_BLOCK_SIZE = 1024;
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final int dimension;
+    private final int vectorCount;
+    private final long vectorBytes;
+
+    private OffHeapVectorProvider(int vectorCount, int dimension) {
+        this.vectorCount = vectorCount;
+        this.dimension = dimension;
+        this.vectorBytes = 4L * dimension;
+        this.arena = Arena.ofShared();
+        this.segment = arena.allocate(vectorCount * vectorBytes, 64);
+    }
+
+    /**
+     * Copies the first numVectors vectors of the source into a new off-heap store, with the given
+     * number of threads each filling disjoint blocks. The store has the dimension of the source. The
+     * source is not closed.
+     */
+    public static OffHeapVectorProvider load(VectorProvider source, int numVectors, int threads)
+            throws IOException, InterruptedException {
+        int count = Math.min(numVectors, source.size());
+        int dimension = source.dimension();
+        OffHeapVectorProvider store = new OffHeapVectorProvider(count, dimension);
+        log.info("Loading {} vectors of {} dimensions off-heap ({} bytes) with {} threads",
+                 count, dimension, store.segment.byteSize(), threads);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger nextBlockStart = new AtomicInteger(0);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    float[][] block = new float[LOAD_BLOCK_SIZE][dimension];
+                    int start;
+                    while ((start = nextBlockStart.getAndAdd(LOAD_BLOCK_SIZE)) < count) {
+                        int n = Math.min(LOAD_BLOCK_SIZE, count - start);
+                        source.readRange(start, n, block);
+                        for (int i = 0; i < n; i++) {
+                            MemorySegment.copy(block[i], 0, store.segment, ValueLayout.JAVA_FLOAT,
+                                               (start + i) * store.vectorBytes, dimension);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+            store.close();
+            throw new IOException("Failed to load vectors off-heap", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return store;
+    }
+
+    @Override
+    public float[] get(int index) throws IOException {
+        float[] vector = new float[dimension];
+        readInto(index, vector);
+        return vector;
+    }
+
+    @Override
+    public void readInto(int index, float[] dest) throws IOException {
+        if (index < 0 || index >= vectorCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds [0, " + vectorCount + ")");
+        }
+        MemorySegment.copy(segment, ValueLayout.JAVA_FLOAT, index * vectorBytes, dest, 0, dimension);
+    }
+
+    @Override
+    public void readRange(int start, int count, float[][] dest) throws IOException {
+        VectorProvider.checkRange(start, count, vectorCount);
+        for (int i = 0; i < count; i++) {
+            MemorySegment.copy(segment, ValueLayout.JAVA_FLOAT, (start + i) * vectorBytes, dest[i], 0, dimension);
+        }
+    }
+
+    @Override
+    public int size() {
+        return vectorCount;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Number of bytes held off-heap by this store
+     */
+    public long residentBytes() {
+        return segment.byteSize();
+    }
+
+    @Override
+    public void close() throws IOException {
+        arena.close();
+    }
+}
@@ -0,0 +1,172 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TopDocs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Open-loop query load: queries arrive on a schedule of intended send times (constant or Poisson
+ * inter-arrival times at the offered rate) regardless of how many are still running, and queue for
+ * openLoopThreads worker threads. The latency of a query is measured from its intended send time,
+ * so time spent queued behind slow queries, or a late dispatcher, is counted as it would be by a
+ * client (no coordinated omission); the service time, from the start of execution, is reported as
+ * well.
+ *
+ * The offered load goes from openLoopQps to openLoopMaxQps in openLoopSteps geometric steps, each
+ * lasting openLoopDurationSec. A level is saturated when it completes less than 95% of the offered
+ * rate or its p99 latency exceeds openLoopKneeFactor times the p99 of the first level; the sweep
+ * stops at the first saturated level and the knee is the highest offered load below it.
+ */
+public class OpenLoopBenchmark extends QueryBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(OpenLoopBenchmark.class.getName());
+
+  private static final double MIN_THROUGHPUT_RATIO = 0.95;
+
+  private final IndexSearcher searcher;
+
+  private OpenLoopBenchmark(BenchmarkConfiguration config, IndexReader reader, VectorProvider queries)
+      throws IOException {
+    super(config, reader, queries);
+    this.searcher = new IndexSearcher(reader);
+  }
+
+  /**
+   * Runs the offered load levels against reader, adding the open-loop-* metrics
+   */
+  public static void run(IndexReader reader, BenchmarkConfiguration config, VectorProvider queries,
+      Map<String, Object> metrics) throws IOException, InterruptedException {
+    new OpenLoopBenchmark(config, reader, queries).run(metrics);
+  }
+
+  private void run(Map<String, Object> metrics) throws IOException, InterruptedException {
+    double[] offeredLoads = offeredLoads();
+    log.info("Starting open-loop benchmark: {} arrivals, offered loads {} qps, {} s each, {} threads",
+        config.getEffectiveOpenLoopArrival(), Arrays.toString(offeredLoads),
+        config.getEffectiveOpenLoopDurationSec(), config.getEffectiveOpenLoopThreads());
+    List<Map<String, Object>> levels = new ArrayList<>();
+    double baselineP99 = 0;
+    double kneeQps = 0;
+    boolean saturated = false;
+    for (double qps : offeredLoads) {
+      Map<String, Object> level = runLevel(qps);
+      double p99 = (Double) level.get("latency-p99");
+      if (levels.isEmpty()) {
+        baselineP99 = p99;
+      }
+      saturated = (Double) level.get("achieved-qps") < MIN_THROUGHPUT_RATIO * qps
+          || p99 > config.getEffectiveOpenLoopKneeFactor() * baselineP99;
+      level.put("saturated", saturated);
+      levels.add(level);
+      log.info("Open-loop level {} qps: achieved {} qps, latency p50 {} ms, p99 {} ms, service p99 {} ms{}",
+          String.format("%.1f", qps), String.format("%.1f", level.get("achieved-qps")),
+          String.format("%.3f", level.get("latency-p50")), String.format("%.3f", p99),
+          String.format("%.3f", level.get("service-time-p99")), saturated ? " (saturated)" : "");
+      if (saturated) {
+        break; // queues only grow from here, later levels take longer and show nothing new
+      }
+      kneeQps = qps;
+    }
+    metrics.put("open-loop-arrival", config.getEffectiveOpenLoopArrival());
+    metrics.put("open-loop-threads", config.getEffectiveOpenLoopThreads());
+    metrics.put("open-loop-levels", levels);
+    // 0 when already the first level is saturated
+    metrics.put("open-loop-knee-qps", kneeQps);
+    metrics.put("open-loop-saturated", saturated);
+  }
+
+  private double[] offeredLoads() {
+    int steps = config.openLoopMaxQps > config.openLoopQps ? config.getEffectiveOpenLoopSteps() : 1;
+    double[] loads = new double[steps];
+    double factor = steps > 1 ? Math.pow(config.openLoopMaxQps / config.openLoopQps, 1.0 / (steps - 1)) : 1;
+    for (int i = 0; i < steps; i++) {
+      loads[i] = config.openLoopQps * Math.pow(factor, i);
+    }
+    return loads;
+  }
+
+  /**
+   * Dispatches openLoopDurationSec of arrivals at qps and waits for all of them to complete
+   */
+  private Map<String, Object> runLevel(double qps) throws IOException, InterruptedException {
+    int arrivals = Math.max(1, (int) Math.ceil(qps * config.getEffectiveOpenLoopDurationSec()));
+    boolean poisson = "POISSON".equals(config.getEffectiveOpenLoopArrival());
+    double meanGapNanos = 1e9 / qps;
+    Random random = new Random(42);
+    // Every arrival writes its own slots, no synchronization needed
+    long[] latencyNanos = new long[arrivals];
+    long[] serviceNanos = new long[arrivals];
+    long[] completedAt = new long[arrivals];
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    ExecutorService workers = Executors.newFixedThreadPool(config.getEffectiveOpenLoopThreads());
+
+    long start = System.nanoTime();
+    double offset = 0;
+    long maxDispatchLag = 0;
+    for (int i = 0; i < arrivals && failure.get() == null; i++) {
+      long intended = start + (long) offset;
+      offset += poisson ? -Math.log(1 - random.nextDouble()) * meanGapNanos : meanGapNanos;
+      for (long wait = intended - System.nanoTime(); wait > 0; wait = intended - System.nanoTime()) {
+        LockSupport.parkNanos(wait);
+      }
+      maxDispatchLag = Math.max(maxDispatchLag, System.nanoTime() - intended);
+      int arrival = i;
+      float[] queryVector = queries.get(i % numQueries);
+      workers.submit(() -> {
+        try {
+          long serviceStart = System.nanoTime();
+          TopDocs topDocs = searcher.search(Util.newKnnQuery(config, queryVector), config.getEffectiveEfSearch());
+          int count = Math.min(config.topK, topDocs.scoreDocs.length);
+          idResolver.resolve(topDocs.scoreDocs, count, new int[count]);
+          long end = System.nanoTime();
+          latencyNanos[arrival] = end - intended;
+          serviceNanos[arrival] = end - serviceStart;
+          completedAt[arrival] = end;
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        }
+      });
+    }
+    workers.shutdown();
+    workers.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+    if (failure.get() != null) {
+      throw new IOException("Open-loop query failed", failure.get());
+    }
+
+    long lastCompletion = start;
+    LatencyHistogram latencies = new LatencyHistogram();
+    LatencyHistogram serviceTimes = new LatencyHistogram();
+    LatencyHistogram queueTimes = new LatencyHistogram();
+    for (int i = 0; i < arrivals; i++) {
+      lastCompletion = Math.max(lastCompletion, completedAt[i]);
+      latencies.record(latencyNanos[i]);
+      serviceTimes.record(serviceNanos[i]);
+      queueTimes.record(latencyNanos[i] - serviceNanos[i]);
+    }
+    Map<String, Object> level = new LinkedHashMap<>();
+    level.put("offered-qps", qps);
+    level.put("queries", arrivals);
+    level.put("achieved-qps", arrivals / ((lastCompletion - start) / 1e9));
+    level.put("max-dispatch-lag-ms", maxDispatchLag / 1e6);
+    level.put("mean-latency", latencies.meanNanos() / 1e6);
+    latencies.addPercentiles(level, "latency");
+    serviceTimes.addPercentiles(level, "service-time");
+    queueTimes.addPercentiles(level, "queue-time");
+    return level;
+  }
+}
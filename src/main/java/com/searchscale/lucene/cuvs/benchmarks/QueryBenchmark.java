@@ -0,0 +1,45 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+
+/**
+ * Common state of the benchmarks that run queries against the built index after the closed-loop
+ * search: the reader, the resolver of the ids of its hits, and the query vectors, of which the
+ * first numQueries are run.
+ */
+public abstract class QueryBenchmark {
+
+  /**
+   * A benchmark run against a reader of the built index, adding its metrics
+   */
+  @FunctionalInterface
+  public interface Runner {
+    void run(IndexReader reader, BenchmarkConfiguration config, VectorProvider queries, Map<String, Object> metrics)
+        throws IOException, InterruptedException;
+  }
+
+  protected final BenchmarkConfiguration config;
+  protected final IndexReader reader;
+  protected final IdResolver idResolver;
+  protected final VectorProvider queries;
+  protected final int numQueries;
+
+  protected QueryBenchmark(BenchmarkConfiguration config, IndexReader reader, VectorProvider queries)
+      throws IOException {
+    this.config = config;
+    this.reader = reader;
+    this.idResolver = IdResolver.create(reader, config.getEffectiveIdResolution());
+    this.queries = queries;
+    this.numQueries = numQueries(config, queries);
+  }
+
+  /**
+   * Number of queries to run: numQueriesToRun, at most as many as there are query vectors
+   */
+  public static int numQueries(BenchmarkConfiguration config, VectorProvider queries) {
+    return Math.min(config.numQueriesToRun, queries.size());
+  }
+}
@@ -1,9 +1,7 @@
 package com.searchscale.lucene.cuvs.benchmarks;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -17,46 +15,75 @@ public class QueryResult {
   @JsonProperty("docs")
   final List<Integer> docs;
   @JsonProperty("ground-truth")
-  final int[] groundTruth;
+  final GroundTruth.Row groundTruth;
   @JsonProperty("scores")
   final List<Float> scores;
   @JsonProperty("latency")
   final double latencyMs;
+  @JsonProperty("retrieval-latency")
+  final double retrievalLatencyMs;
+  // Percentage of the run's queries with a search latency up to this one's, set once the run is over
+  @JsonProperty("latency-percentile")
+  double latencyPercentile;
   @JsonProperty("recall")
   double recall;
 
-  public QueryResult(String codec, int id, List<Integer> docs, int[] groundTruth, List<Float> scores,
-      double latencyMs) {
+  public QueryResult(String codec, int id, List<Integer> docs, GroundTruth.Row groundTruth, List<Float> scores,
+      double latencyMs, double retrievalLatencyMs) {
     this.codec = codec;
     this.queryId = id;
     this.docs = docs;
     this.groundTruth = groundTruth;
     this.scores = scores;
     this.latencyMs = latencyMs;
+    this.retrievalLatencyMs = retrievalLatencyMs;
     calculateRecallAccuracy();
   }
 
   private void calculateRecallAccuracy() {
 
     // Validate that ground truth has enough elements for the requested topK
-    if (groundTruth.length < docs.size()) {
-      System.err.println("WARNING: Ground truth contains only " + groundTruth.length + 
+    if (groundTruth.length() < docs.size()) {
+      System.err.println("WARNING: Ground truth contains only " + groundTruth.length() + 
                         " elements, but topK=" + docs.size() + " was requested.");
       System.err.println("Cannot calculate accurate recall with insufficient ground truth data.");
-      System.err.println("Please reduce topK to " + groundTruth.length + " or less, or use ground truth with more elements.");
+      System.err.println("Please reduce topK to " + groundTruth.length() + " or less, or use ground truth with more elements.");
       System.exit(1);
     }
 
-    ArrayList<Integer> topKGroundtruthValues = new ArrayList<Integer>();
-    for (int i = 0; i < docs.size(); i++) {
-      topKGroundtruthValues.add(groundTruth[i]);
+    int[] sortedDocs = new int[docs.size()];
+    for (int i = 0; i < sortedDocs.length; i++) {
+      sortedDocs[i] = docs.get(i);
     }
-
-    Set<Integer> matchingRecallValues = docs.stream().distinct().filter(topKGroundtruthValues::contains)
-        .collect(Collectors.toSet());
+    Arrays.sort(sortedDocs);
+    int matchingRecallValues = countMatches(sortedDocs, groundTruth);
 
     // docs.size() is the topK value
-    this.recall = ((double) matchingRecallValues.size() / (double) docs.size());
+    this.recall = ((double) matchingRecallValues / (double) docs.size());
+  }
+
+  /**
+   * Counts the distinct docs of sortedDocs (sorted ascending) that are among the first
+   * sortedDocs.length ground truth neighbors, reading the ground truth in place
+   */
+  static int countMatches(int[] sortedDocs, GroundTruth.Row groundTruth) {
+    boolean[] matched = new boolean[sortedDocs.length];
+    int matchingRecallValues = 0;
+    for (int i = 0; i < sortedDocs.length; i++) {
+      int found = Arrays.binarySearch(sortedDocs, groundTruth.get(i));
+      if (found < 0) {
+        continue;
+      }
+      // binarySearch may land on any copy of a duplicate doc, move to the first one
+      while (found > 0 && sortedDocs[found - 1] == sortedDocs[found]) {
+        found--;
+      }
+      if (!matched[found]) {
+        matched[found] = true;
+        matchingRecallValues++;
+      }
+    }
+    return matchingRecallValues;
   }
 
   @Override
@@ -71,4 +98,8 @@ public class QueryResult {
   public double getRecall() {
     return recall;
   }
+
+  void setLatencyPercentile(LatencyHistogram latencies) {
+    this.latencyPercentile = latencies.percentileOf((long) (latencyMs * 1e6));
+  }
 }
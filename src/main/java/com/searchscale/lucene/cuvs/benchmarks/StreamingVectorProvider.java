@@ -6,6 +6,8 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.zip.GZIPInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,8 +19,21 @@ import org.slf4j.LoggerFactory;
 public class StreamingVectorProvider implements VectorProvider {
     private static final Logger log = LoggerFactory.getLogger(StreamingVectorProvider.class.getName());
 
-    private enum FileFormat {
-        FVECS, FBIN, BVECS, IVECS
+    enum FileFormat {
+        FVECS, FBIN, BVECS, IVECS;
+
+        static FileFormat fromPath(String filePath) {
+            if (filePath.contains("fvecs")) {
+                return FVECS;
+            } else if (filePath.contains("fbin")) {
+                return FBIN;
+            } else if (filePath.contains("bvecs")) {
+                return BVECS;
+            } else if (filePath.contains("ivecs")) {
+                return IVECS;
+            }
+            throw new IllegalArgumentException("Unsupported file format: " + filePath);
+        }
     }
 
     private final String filePath;
@@ -27,23 +42,17 @@ public class StreamingVectorProvider implements VectorProvider {
     private final long vectorSize; // size of one vector in bytes
     private final boolean isCompressed;
     private final FileFormat format;
+    private final FileChannel channel; // shared for positional reads, null for compressed files
+    private final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<>();
+
+    private static final long MAX_READ_BYTES = 4 << 20;
 
     public StreamingVectorProvider(String filePath, int maxVectors) throws IOException {
         this.filePath = filePath;
         this.isCompressed = filePath.endsWith(".gz");
 
         // Determine file format
-        if (filePath.contains("fvecs")) {
-            this.format = FileFormat.FVECS;
-        } else if (filePath.contains("fbin")) {
-            this.format = FileFormat.FBIN;
-        } else if (filePath.contains("bvecs")) {
-            this.format = FileFormat.BVECS;
-        } else if (filePath.contains("ivecs")) {
-            this.format = FileFormat.IVECS;
-        } else {
-            throw new IllegalArgumentException("Unsupported file format: " + filePath);
-        }
+        this.format = FileFormat.fromPath(filePath);
 
         // Read header and initialize fields based on format
         int tempDimension;
@@ -97,6 +106,7 @@ public class StreamingVectorProvider implements VectorProvider {
         this.dimension = tempDimension;
         this.vectorCount = tempVectorCount;
         this.vectorSize = tempVectorSize;
+        this.channel = isCompressed ? null : FileChannel.open(Path.of(filePath), StandardOpenOption.READ);
 
         log.info("StreamingVectorProvider initialized: {} vectors, {} dimensions, format: {}",
                  vectorCount, dimension, format);
@@ -145,146 +155,118 @@ public class StreamingVectorProvider implements VectorProvider {
         if (index < 0 || index >= vectorCount) {
             throw new IndexOutOfBoundsException("Index " + index + " out of bounds [0, " + vectorCount + ")");
         }
+        float[] vector = new float[dimension];
+        readInto(index, vector);
+        return vector;
+    }
 
+    @Override
+    public void readInto(int index, float[] dest) throws IOException {
+        if (index < 0 || index >= vectorCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds [0, " + vectorCount + ")");
+        }
         if (isCompressed) {
-            return getFromCompressedFile(index);
+            readRangeFromCompressedFile(index, 1, new float[][] {dest});
         } else {
-            return getFromUncompressedFile(index);
+            readRangeFromUncompressedFile(index, 1, new float[][] {dest});
         }
     }
 
-    private float[] getFromUncompressedFile(int index) throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(filePath, "r");
-             FileChannel channel = raf.getChannel()) {
+    /**
+     * Reads the range with as few positional reads as possible (or a single pass over the
+     * compressed stream) instead of one read per vector
+     */
+    @Override
+    public void readRange(int start, int count, float[][] dest) throws IOException {
+        VectorProvider.checkRange(start, count, vectorCount);
+        if (isCompressed) {
+            readRangeFromCompressedFile(start, count, dest);
+        } else {
+            readRangeFromUncompressedFile(start, count, dest);
+        }
+    }
 
-            long position;
-            if (format == FileFormat.FBIN) {
-                // Skip initial header (8 bytes: num_vectors + dimension) and go to vector position
-                position = 8 + index * vectorSize;
-            } else {
-                // Standard position calculation for other formats
-                position = index * vectorSize;
-            }
+    private long positionOf(int index) {
+        // Skip initial header (8 bytes: num_vectors + dimension) for .fbin
+        return (format == FileFormat.FBIN ? 8 : 0) + index * vectorSize;
+    }
 
-            channel.position(position);
-            ByteBuffer buffer = ByteBuffer.allocate((int)vectorSize);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-            channel.read(buffer);
-            buffer.flip();
+    private ByteBuffer scratchBuffer(int bytes) {
+        ByteBuffer buffer = scratch.get();
+        if (buffer == null || buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            scratch.set(buffer);
+        }
+        buffer.clear().limit(bytes);
+        return buffer;
+    }
 
-            // Read vector based on format
-            return readVectorFromBuffer(buffer, index);
+    private void readRangeFromUncompressedFile(int start, int count, float[][] dest) throws IOException {
+        // Positional reads on the shared channel are safe to issue concurrently from indexing threads
+        int vectorsPerRead = (int) Math.max(1, Math.min(count, MAX_READ_BYTES / vectorSize));
+        for (int done = 0; done < count; done += vectorsPerRead) {
+            int n = Math.min(vectorsPerRead, count - done);
+            ByteBuffer buffer = scratchBuffer((int) (n * vectorSize));
+            long position = positionOf(start + done);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file reading vector " + (start + done));
+                }
+            }
+            buffer.flip();
+            for (int i = 0; i < n; i++) {
+                decodeVector(buffer, start + done + i, dest[done + i]);
+            }
         }
     }
 
-    private float[] readVectorFromBuffer(ByteBuffer buffer, int index) throws IOException {
-        float[] vector = new float[dimension];
+    private void decodeVector(ByteBuffer buffer, int index, float[] vector) throws IOException {
+        if (format != FileFormat.FBIN) {
+            // Read and verify the per-vector dimension prefix
+            int fileDimension = buffer.getInt();
+            if (fileDimension != dimension) {
+                throw new IOException("Dimension mismatch at vector " + index +
+                        ": expected " + dimension + ", got " + fileDimension);
+            }
+        }
 
         switch (format) {
             case FVECS:
-                // Read and verify dimension, then read floats
-                int fileDimension = buffer.getInt();
-                if (fileDimension != dimension) {
-                    throw new IOException("Dimension mismatch at vector " + index +
-                            ": expected " + dimension + ", got " + fileDimension);
-                }
-                for (int i = 0; i < dimension; i++) {
-                    vector[i] = buffer.getFloat();
-                }
-                break;
-
             case FBIN:
-                // No dimension prefix, just read floats
-                for (int i = 0; i < dimension; i++) {
-                    vector[i] = buffer.getFloat();
-                }
+                // Bulk decode through a float view, then move past the vector
+                buffer.asFloatBuffer().get(vector, 0, dimension);
+                buffer.position(buffer.position() + 4 * dimension);
                 break;
 
             case BVECS:
-                // Read and verify dimension, then read bytes as floats
-                int bvecsDimension = buffer.getInt();
-                if (bvecsDimension != dimension) {
-                    throw new IOException("Dimension mismatch at vector " + index +
-                            ": expected " + dimension + ", got " + bvecsDimension);
-                }
                 for (int i = 0; i < dimension; i++) {
                     vector[i] = buffer.get() & 0xff; // Convert byte to unsigned int as float
                 }
                 break;
 
             case IVECS:
-                // Read and verify dimension, then read ints as floats
-                int ivecsDimension = buffer.getInt();
-                if (ivecsDimension != dimension) {
-                    throw new IOException("Dimension mismatch at vector " + index +
-                            ": expected " + dimension + ", got " + ivecsDimension);
-                }
                 for (int i = 0; i < dimension; i++) {
                     vector[i] = (float) buffer.getInt();
                 }
                 break;
         }
-
-        return vector;
     }
 
-    private float[] getFromCompressedFile(int index) throws IOException {
+    private void readRangeFromCompressedFile(int start, int count, float[][] dest) throws IOException {
         // For compressed files, we need to read sequentially from the beginning
         try (FileInputStream fis = new FileInputStream(filePath);
-             GZIPInputStream gzis = new GZIPInputStream(fis)) {
+             GZIPInputStream gzis = new GZIPInputStream(fis, Util.DEFAULT_BUFFER_SIZE)) {
+            gzis.skipNBytes(positionOf(start));
 
-            if (format == FileFormat.FBIN) {
-                // Skip initial header (8 bytes: num_vectors + dimension)
-                gzis.skip(8);
-
-                // Read vectors until we reach the desired index
-                for (int i = 0; i <= index; i++) {
-                    byte[] vectorBytes = new byte[dimension * 4];
-                    if (gzis.read(vectorBytes) != vectorBytes.length) {
-                        throw new IOException("Unexpected end of file reading vector " + i);
-                    }
-
-                    if (i == index) {
-                        ByteBuffer buffer = ByteBuffer.wrap(vectorBytes);
-                        buffer.order(ByteOrder.LITTLE_ENDIAN);
-                        return readVectorFromBuffer(buffer, index);
-                    }
-                }
-            } else {
-                // Handle other formats (fvecs, bvecs, ivecs) with dimension prefix per vector
-                ByteBuffer dimBuffer = ByteBuffer.allocate(4);
-                dimBuffer.order(ByteOrder.LITTLE_ENDIAN);
-
-                for (int i = 0; i <= index; i++) {
-                    // Read dimension
-                    dimBuffer.clear();
-                    if (gzis.read(dimBuffer.array()) != 4) {
-                        throw new IOException("Unexpected end of file reading vector " + i);
-                    }
-
-                    int fileDimension = dimBuffer.getInt();
-                    if (fileDimension != dimension) {
-                        throw new IOException("Dimension mismatch at vector " + i +
-                                ": expected " + dimension + ", got " + fileDimension);
-                    }
-
-                    // Read vector data
-                    int dataSize = format == FileFormat.BVECS ? dimension : dimension * 4;
-                    byte[] vectorBytes = new byte[dataSize];
-                    if (gzis.read(vectorBytes) != vectorBytes.length) {
-                        throw new IOException("Unexpected end of file reading vector data for vector " + i);
-                    }
-
-                    if (i == index) {
-                        ByteBuffer vectorBuffer = ByteBuffer.wrap(vectorBytes);
-                        vectorBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                        return readVectorFromBuffer(vectorBuffer, index);
-                    }
+            ByteBuffer buffer = ByteBuffer.allocate((int) vectorSize).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < count; i++) {
+                if (gzis.readNBytes(buffer.array(), 0, (int) vectorSize) != vectorSize) {
+                    throw new IOException("Unexpected end of file reading vector " + (start + i));
                 }
+                buffer.clear();
+                decodeVector(buffer, start + i, dest[i]);
             }
         }
-
-        throw new IOException("Could not read vector " + index);
     }
 
     /**
@@ -310,10 +292,13 @@ public class StreamingVectorProvider implements VectorProvider {
 
     @Override
     public void close() throws IOException {
-        // No resources to close for file-based streaming
+        if (channel != null) {
+            channel.close();
+        }
     }
 
-    public int getDimension() {
+    @Override
+    public int dimension() {
         return dimension;
     }
 
@@ -5,16 +5,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipFile;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ArrayUtils;
-import org.mapdb.IndexTreeList;
+import org.apache.lucene.search.KnnByteVectorQuery;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -115,26 +115,6 @@ public class Util {
     return titleVector;
   }
 
-  public static List<int[]> readGroundTruthFile(String groundTruthFile) throws IOException {
-    List<int[]> rst = new ArrayList<int[]>();
-    if (groundTruthFile.endsWith("csv")) {
-      log.info("Seems like a csv groundtruth file. Reading ...");
-      for (String line : FileUtils.readFileToString(new File(groundTruthFile), "UTF-8").split("\n")) {
-        rst.add(Util.parseIntArrayFromStringArray(line));
-      }
-    } else if (groundTruthFile.endsWith("ivecs")) {
-      log.info("Seems like a ivecs groundtruth file. Reading ...");
-      rst = FBIvecsReader.readIvecs(groundTruthFile, -1);
-    } else if (groundTruthFile.endsWith("ibin")) {
-      log.info("Seems like a ibin groundtruth file. Reading ...");
-      rst = FBIvecsReader.readIbin(groundTruthFile, -1);
-    } else {
-      throw new RuntimeException("Not parsing groundtruth file and stopping. Are you passing the correct file path?");
-    }
-    log.info("{} number of entries in the groundtruth file.", rst.size());
-    return rst;
-  }
-
   public static void readBaseFile(BenchmarkConfiguration config, List<String> titles, List<float[]> vectors) {
     if (config.datasetFile.contains("fvecs")) {
       log.info("Seems like an fvecs base file. Reading ...");
@@ -163,6 +143,75 @@ public class Util {
     if (!new File(config.groundTruthFile).exists()) {
       throw new RuntimeException(config.groundTruthFile + " is not found. Not proceeding.");
     }
+
+    if (!config.isLucene() && !config.isCagra()) {
+      throw new RuntimeException("Unknown algoToRun " + config.algoToRun
+          + ". Choices: LUCENE_HNSW, LUCENE_HNSW_SQ, LUCENE_HNSW_BQ, CAGRA_HNSW. Not proceeding.");
+    }
+
+    if (config.byteVectors && !"LUCENE_HNSW".equalsIgnoreCase(config.algoToRun)) {
+      throw new RuntimeException("byteVectors is only supported with LUCENE_HNSW. Not proceeding.");
+    }
+
+    if (config.nrtMode && (!config.isLucene() || config.byteVectors || config.numPartitions > 1)) {
+      throw new RuntimeException("nrtMode is only supported for float vectors with the Lucene HNSW algorithms"
+          + " and without numPartitions. Not proceeding.");
+    }
+
+    if (config.churnRounds > 0 && (!config.isLucene() || config.byteVectors)) {
+      throw new RuntimeException("churnRounds is only supported for float vectors with the Lucene HNSW algorithms."
+          + " Not proceeding.");
+    }
+
+    if (config.getEffectiveChurnDeleteRatio() < 0 || config.getEffectiveChurnDeleteRatio() > 1) {
+      throw new RuntimeException("churnDeleteRatio must be between 0 and 1. Not proceeding.");
+    }
+
+    if (config.checkpointIntervalSec > 0 && (config.pipelinedIngestion || config.numPartitions > 1 || config.nrtMode)) {
+      throw new RuntimeException("checkpointIntervalSec is not supported with pipelinedIngestion, numPartitions or"
+          + " nrtMode. Not proceeding.");
+    }
+
+    if (config.idResolution != null) {
+      try {
+        IdResolver.Mode.valueOf(config.idResolution.toUpperCase());
+      } catch (IllegalArgumentException e) {
+        throw new RuntimeException("Unsupported idResolution: " + config.idResolution
+            + ". Choices: STORED, DOC_VALUES, INDEX_ORDER. Not proceeding.");
+      }
+      if (config.getEffectiveIdResolution() == IdResolver.Mode.INDEX_ORDER && !config.isLucene()) {
+        throw new RuntimeException("idResolution INDEX_ORDER (an index sorted by id) is only supported with the"
+            + " Lucene HNSW algorithms. Not proceeding.");
+      }
+    }
+
+    if (config.openLoopQps < 0 || (config.openLoopMaxQps > 0 && config.openLoopMaxQps < config.openLoopQps)) {
+      throw new RuntimeException("openLoopQps must be positive and at most openLoopMaxQps. Not proceeding.");
+    }
+
+    if (config.openLoopArrival != null && !"POISSON".equalsIgnoreCase(config.openLoopArrival)
+        && !"CONSTANT".equalsIgnoreCase(config.openLoopArrival)) {
+      throw new RuntimeException("Unsupported openLoopArrival: " + config.openLoopArrival
+          + ". Choices: POISSON, CONSTANT. Not proceeding.");
+    }
+
+    if (config.indexCacheDir != null && config.createIndexInMemory) {
+      throw new RuntimeException("indexCacheDir is not supported with createIndexInMemory. Not proceeding.");
+    }
+
+    if (config.checkpointIntervalSec > 0 && config.createIndexInMemory) {
+      log.warn("checkpointIntervalSec has no effect on resuming with createIndexInMemory");
+    }
+
+    if (config.isScalarQuantized()) {
+      int bits = config.getEffectiveQuantizationBits();
+      if (bits != 4 && bits != 7 && bits != 8) {
+        throw new RuntimeException("quantizationBits must be 4, 7 or 8, got " + bits + ". Not proceeding.");
+      }
+      if (config.quantizationCompress && bits != 4) {
+        throw new RuntimeException("quantizationCompress is only supported with 4 quantizationBits. Not proceeding.");
+      }
+    }
   }
 
   /**
@@ -182,4 +231,16 @@ public class Util {
     double percentRecallAccuracy = (totalRecall / (double)queryResults.size()) * 100.0;
     metrics.put((useCuVS ? "cuvs" : "hnsw") + "-recall-accuracy", percentRecallAccuracy);
   }
+
+  /**
+   * The Lucene HNSW query of queryVector, converted to a byte vector for byteVectors indexes
+   */
+  public static Query newKnnQuery(BenchmarkConfiguration config, float[] queryVector) {
+    if (config.byteVectors) {
+      byte[] target = MappedByteVectorProvider.toByteVector(queryVector,
+          MappedByteVectorProvider.isUnsigned(config.datasetFile));
+      return new KnnByteVectorQuery(config.vectorColName, target, config.getEffectiveEfSearch());
+    }
+    return new KnnFloatVectorQuery(config.vectorColName, queryVector, config.getEffectiveEfSearch());
+  }
 }
@@ -0,0 +1,308 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Flat binary cache of parsed vectors (&lt;source&gt;.vcache), written once and memory-mapped on
+ * later runs. It replaces the MapDB files that used to be built for CSV/bvecs datasets and for
+ * query files.
+ *
+ * Layout (little endian): a 64 byte header (magic, version, dimension, count, limit, source length,
+ * source modification time, source fingerprint), followed by count * dimension float32 values as in
+ * an .fbin file. The cache is stale, and gets rebuilt, when the source's length, modification time
+ * or fingerprint no longer match. The fingerprint is a CRC32C over evenly spaced samples of the
+ * source, so validating a cache does not re-read a multi-GB source.
+ */
+public class VectorCache {
+    private static final Logger log = LoggerFactory.getLogger(VectorCache.class.getName());
+
+    public static final String EXTENSION = ".vcache";
+
+    static final int MAGIC = 0x48434356; // "VCCH"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    private static final int SAMPLE_COUNT = 16;
+    private static final int SAMPLE_BYTES = 1 << 20;
+
+    private record Header(int dimension, int count, int limit, long sourceLength, long sourceModified,
+                          long sourceFingerprint) {
+    }
+
+    /**
+     * Whether cacheFile exists, matches the current source file and holds at least the first
+     * limit vectors of the source (limit <= 0 means all of them)
+     */
+    public static boolean isValid(String cacheFile, String sourceFile, int limit) throws IOException {
+        Path cache = Path.of(cacheFile);
+        if (!Files.exists(cache)) {
+            return false;
+        }
+        Header header = readHeader(cache);
+        if (header == null) {
+            log.warn("Vector cache {} is not readable, it will be rebuilt", cacheFile);
+            return false;
+        }
+        Path source = Path.of(sourceFile);
+        if (header.sourceLength() != Files.size(source)
+            || header.sourceModified() != Files.getLastModifiedTime(source).toMillis()
+            || header.sourceFingerprint() != fingerprint(source)) {
+            log.warn("Vector cache {} is stale, {} has changed since it was built", cacheFile, sourceFile);
+            return false;
+        }
+        boolean truncated = header.limit() > 0 && header.count() >= header.limit();
+        if (truncated && (limit <= 0 || limit > header.count())) {
+            log.info("Vector cache {} holds {} vectors, {} requested, it will be rebuilt", cacheFile,
+                     header.count(), limit <= 0 ? "all" : limit);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Memory-maps a valid cache file, exposing at most maxVectors vectors (all for maxVectors <= 0)
+     */
+    public static MappedVectorProvider open(String cacheFile, int maxVectors) throws IOException {
+        Header header = readHeader(Path.of(cacheFile));
+        if (header == null) {
+            throw new IOException("Not a vector cache file: " + cacheFile);
+        }
+        log.info("Opening vector cache {} with {} vectors of {} dimensions", cacheFile, header.count(), header.dimension());
+        return new MappedVectorProvider(cacheFile, HEADER_SIZE, header.dimension(), header.count(), maxVectors);
+    }
+
+    /**
+     * Starts a new cache for sourceFile. limit is the maximum number of vectors the caller will add
+     * (<= 0 for all), recorded so that a later run asking for more vectors rebuilds the cache.
+     */
+    public static Writer create(String cacheFile, String sourceFile, int limit) throws IOException {
+        return new Writer(Path.of(cacheFile), Path.of(sourceFile), limit);
+    }
+
+    private static Header readHeader(Path cache) throws IOException {
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            Header header = new Header(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getLong(),
+                                       buffer.getLong(), buffer.getLong());
+            if (channel.size() < HEADER_SIZE + 4L * header.dimension() * header.count()) {
+                return null;
+            }
+            return header;
+        }
+    }
+
+    /**
+     * CRC32C over SAMPLE_COUNT evenly spaced 1MB samples of the file (the whole file when smaller)
+     */
+    static long fingerprint(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_BYTES);
+            long stride = Math.max(SAMPLE_BYTES, (size - SAMPLE_BYTES) / Math.max(1, SAMPLE_COUNT - 1));
+            for (long position = 0; position < size; position += stride) {
+                buffer.clear();
+                long at = Math.min(position, Math.max(0, size - SAMPLE_BYTES));
+                while (buffer.hasRemaining() && channel.read(buffer, at + buffer.position()) > 0) {
+                }
+                buffer.flip();
+                crc.update(buffer);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Number of vectors in an uncompressed fvecs, fbin, bvecs or ivecs source of the given dimension,
+     * -1 when it cannot be told without parsing the source (CSV, compressed files)
+     */
+    static long expectedCount(Path source, int dimension) throws IOException {
+        String name = source.getFileName().toString();
+        if (dimension <= 0 || name.endsWith(".gz") || name.endsWith(".zip")) {
+            return -1;
+        }
+        if (name.contains("fbin")) {
+            try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+                }
+                return buffer.hasRemaining() ? -1 : buffer.getInt(0);
+            }
+        } else if (name.contains("fvecs") || name.contains("ivecs")) {
+            return Files.size(source) / (4 + 4L * dimension);
+        } else if (name.contains("bvecs")) {
+            return Files.size(source) / (4L + dimension);
+        }
+        return -1;
+    }
+
+    /**
+     * Appends vectors to a new cache file. The file is written under a temporary name and only moved
+     * into place by commit(), once the source has been read fully; closing without a commit deletes
+     * it, so an interrupted build never leaves a cache that looks valid.
+     */
+    public static class Writer implements AutoCloseable {
+        private final Path cacheFile;
+        private final Path tempFile;
+        private final Path sourceFile;
+        private final int limit;
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(Util.DEFAULT_BUFFER_SIZE * 16).order(ByteOrder.LITTLE_ENDIAN);
+        private int dimension = -1;
+        private int count;
+        private boolean committed;
+
+        private Writer(Path cacheFile, Path sourceFile, int limit) throws IOException {
+            this.cacheFile = cacheFile;
+            this.tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            this.sourceFile = sourceFile;
+            this.limit = limit;
+            this.channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                            StandardOpenOption.WRITE);
+            channel.position(HEADER_SIZE);
+        }
+
+        public void add(float[] vector) throws IOException {
+            if (dimension == -1) {
+                dimension = vector.length;
+            } else if (vector.length != dimension) {
+                throw new IOException("Dimension mismatch at vector " + count + ": expected " + dimension + ", got " + vector.length);
+            }
+            if (buffer.remaining() < 4 * vector.length) {
+                flush();
+                if (buffer.capacity() < 4 * vector.length) {
+                    buffer = ByteBuffer.allocateDirect(4 * vector.length).order(ByteOrder.LITTLE_ENDIAN);
+                }
+            }
+            buffer.asFloatBuffer().put(vector);
+            buffer.position(buffer.position() + 4 * vector.length);
+            count++;
+        }
+
+        /**
+         * Appends numVectors vectors of the given dimension stored back to back in values
+         */
+        public void add(float[] values, int numVectors, int dimension) throws IOException {
+            if (this.dimension == -1) {
+                this.dimension = dimension;
+            } else if (dimension != this.dimension) {
+                throw new IOException("Dimension mismatch at vector " + count + ": expected " + this.dimension + ", got " + dimension);
+            }
+            int offset = 0;
+            int remaining = numVectors * dimension;
+            while (remaining > 0) {
+                if (buffer.remaining() < 4) {
+                    flush();
+                }
+                int n = Math.min(remaining, buffer.remaining() / 4);
+                buffer.asFloatBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + 4 * n);
+                offset += n;
+                remaining -= n;
+            }
+            count += numVectors;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        /**
+         * An append-only list view, for readers that fill a List&lt;float[]&gt;
+         */
+        public List<float[]> asList() {
+            return new AbstractList<float[]>() {
+                @Override
+                public void add(int index, float[] vector) {
+                    if (index != count) {
+                        throw new UnsupportedOperationException("Vectors can only be appended to a vector cache");
+                    }
+                    try {
+                        Writer.this.add(vector);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public float[] get(int index) {
+                    throw new UnsupportedOperationException("Vectors are not readable until the cache is closed");
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Completes the cache once all vectors of the source (up to limit) have been added: writes the
+         * header and moves the file into place. Fails when no vectors were added, or fewer than the
+         * source holds when its format tells.
+         */
+        public void commit() throws IOException {
+            if (count == 0) {
+                throw new IOException("No vectors were read from " + sourceFile);
+            }
+            long available = expectedCount(sourceFile, dimension);
+            long expected = limit > 0 && available >= 0 ? Math.min(limit, available) : available;
+            if (expected >= 0 && count != expected) {
+                throw new IOException("Read " + count + " vectors from " + sourceFile + ", expected " + expected);
+            }
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(count).putInt(limit)
+                  .putLong(Files.size(sourceFile)).putLong(Files.getLastModifiedTime(sourceFile).toMillis())
+                  .putLong(fingerprint(sourceFile));
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+            channel.close();
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            log.info("Wrote vector cache {} with {} vectors of {} dimensions", cacheFile, count, dimension);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            if (!committed) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+}
@@ -3,21 +3,50 @@ package com.searchscale.lucene.cuvs.benchmarks;
 import java.io.IOException;
 
 /**
- * Interface for providing vectors from various sources (MapDB, direct file streaming, etc.)
+ * Interface for providing vectors from various sources (the vector cache, direct file streaming, etc.)
  */
 public interface VectorProvider {
     /**
      * Get the vector at the specified index
      */
     float[] get(int index) throws IOException;
-    
+
+    /**
+     * Copy the vector at the specified index into a caller-owned array of at least dimension length
+     */
+    default void readInto(int index, float[] dest) throws IOException {
+        float[] vector = get(index);
+        System.arraycopy(vector, 0, dest, 0, vector.length);
+    }
+
+    /**
+     * Copy the count contiguous vectors starting at start into dest[0] .. dest[count - 1]
+     */
+    default void readRange(int start, int count, float[][] dest) throws IOException {
+        checkRange(start, count, size());
+        for (int i = 0; i < count; i++) {
+            readInto(start + i, dest[i]);
+        }
+    }
+
     /**
      * Get the total number of vectors
      */
     int size();
-    
+
+    /**
+     * Number of components per vector, as stored in the source
+     */
+    int dimension();
+
     /**
      * Close any resources
      */
     void close() throws IOException;
+
+    static void checkRange(int start, int count, int size) {
+        if (start < 0 || count < 0 || start > size - count) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + (start + count) + ") out of bounds [0, " + size + ")");
+        }
+    }
 }
\ No newline at end of file
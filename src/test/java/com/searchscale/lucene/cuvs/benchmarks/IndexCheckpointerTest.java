@@ -0,0 +1,149 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.junit.Test;
+
+public class IndexCheckpointerTest {
+
+  private static final int NUM_DOCS = 1000;
+  private static final int BLOCK_SIZE = 10;
+  // Long enough that only the checkpoints the tests take themselves happen
+  private static final int INTERVAL_SECONDS = 3600;
+
+  @Test
+  public void resumeAfterCrashIndexesEveryIdOnce() throws Exception {
+    try (Directory dir = new ByteBuffersDirectory()) {
+      IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig());
+      IndexCheckpointer checkpointer = IndexCheckpointer.open(writer, NUM_DOCS, INTERVAL_SECONDS);
+      assertEquals(0, checkpointer.resumeFrom());
+      for (int i = 0; i < 5; i++) {
+        indexBlock(writer, checkpointer, checkpointer.claim(BLOCK_SIZE), BLOCK_SIZE);
+      }
+      // Three blocks in flight while checkpointing: [50, 60) is half added, [60, 70) is complete
+      // but above the gap, [70, 80) is claimed and not added yet
+      int partial = checkpointer.claim(BLOCK_SIZE);
+      int ahead = checkpointer.claim(BLOCK_SIZE);
+      int pending = checkpointer.claim(BLOCK_SIZE);
+      addDocs(writer, partial, BLOCK_SIZE / 2);
+      indexBlock(writer, checkpointer, ahead, BLOCK_SIZE);
+      checkpointer.checkpoint();
+
+      // Indexed after the checkpoint and lost in the crash
+      addDocs(writer, partial + BLOCK_SIZE / 2, BLOCK_SIZE / 2);
+      checkpointer.completed(partial, BLOCK_SIZE);
+      indexBlock(writer, checkpointer, pending, BLOCK_SIZE);
+      writer.rollback();
+
+      writer = new IndexWriter(dir, new IndexWriterConfig().setOpenMode(IndexWriterConfig.OpenMode.APPEND));
+      checkpointer = IndexCheckpointer.open(writer, NUM_DOCS, INTERVAL_SECONDS);
+      assertEquals(partial, checkpointer.resumeFrom());
+      indexAll(writer, checkpointer);
+      writer.close();
+
+      assertEveryIdOnce(dir);
+    }
+  }
+
+  @Test
+  public void resumeFromEveryCheckpoint() throws Exception {
+    try (Directory dir = new ByteBuffersDirectory()) {
+      int expectedResume = 0;
+      // Every session indexes some blocks, checkpoints, indexes a few more and crashes
+      for (int session = 0; expectedResume < NUM_DOCS / 2; session++) {
+        IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig());
+        IndexCheckpointer checkpointer = IndexCheckpointer.open(writer, NUM_DOCS, INTERVAL_SECONDS);
+        assertEquals(expectedResume, checkpointer.resumeFrom());
+        for (int i = 0; i < 3 + session % 4; i++) {
+          indexBlock(writer, checkpointer, checkpointer.claim(BLOCK_SIZE), BLOCK_SIZE);
+        }
+        checkpointer.checkpoint();
+        expectedResume = checkpointer.resumeFrom() + (3 + session % 4) * BLOCK_SIZE;
+        indexBlock(writer, checkpointer, checkpointer.claim(BLOCK_SIZE), BLOCK_SIZE);
+        writer.rollback();
+      }
+
+      IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig());
+      IndexCheckpointer checkpointer = IndexCheckpointer.open(writer, NUM_DOCS, INTERVAL_SECONDS);
+      assertEquals(expectedResume, checkpointer.resumeFrom());
+      indexAll(writer, checkpointer);
+      writer.close();
+
+      assertEveryIdOnce(dir);
+    }
+  }
+
+  @Test
+  public void completeBuildIsNotResumed() throws Exception {
+    try (Directory dir = new ByteBuffersDirectory()) {
+      IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig());
+      indexAll(writer, IndexCheckpointer.open(writer, NUM_DOCS, INTERVAL_SECONDS));
+      writer.close();
+
+      writer = new IndexWriter(dir, new IndexWriterConfig());
+      IndexCheckpointer checkpointer = IndexCheckpointer.open(writer, NUM_DOCS, INTERVAL_SECONDS);
+      assertEquals(NUM_DOCS, checkpointer.resumeFrom());
+      assertEquals(NUM_DOCS, checkpointer.claim(BLOCK_SIZE));
+      checkpointer.finish(NUM_DOCS);
+      writer.close();
+
+      assertEveryIdOnce(dir);
+    }
+  }
+
+  /**
+   * Indexes the remaining blocks and finishes the build, as indexFloatDocuments does
+   */
+  private static void indexAll(IndexWriter writer, IndexCheckpointer checkpointer) throws Exception {
+    for (int start = checkpointer.claim(BLOCK_SIZE); start < NUM_DOCS; start = checkpointer.claim(BLOCK_SIZE)) {
+      indexBlock(writer, checkpointer, start, Math.min(BLOCK_SIZE, NUM_DOCS - start));
+    }
+    checkpointer.finish(NUM_DOCS);
+    writer.commit();
+  }
+
+  private static void indexBlock(IndexWriter writer, IndexCheckpointer checkpointer, int start, int count)
+      throws IOException {
+    addDocs(writer, start, count);
+    checkpointer.completed(start, count);
+  }
+
+  private static void addDocs(IndexWriter writer, int start, int count) throws IOException {
+    for (int id = start; id < start + count; id++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", String.valueOf(id), Field.Store.YES));
+      writer.addDocument(doc);
+    }
+  }
+
+  private static void assertEveryIdOnce(Directory dir) throws IOException {
+    int[] counts = new int[NUM_DOCS];
+    try (DirectoryReader reader = DirectoryReader.open(dir)) {
+      for (LeafReaderContext leaf : reader.leaves()) {
+        Bits liveDocs = leaf.reader().getLiveDocs();
+        StoredFields storedFields = leaf.reader().storedFields();
+        for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+          if (liveDocs == null || liveDocs.get(doc)) {
+            counts[Integer.parseInt(storedFields.document(doc).get("id"))]++;
+          }
+        }
+      }
+    }
+    for (int id = 0; id < NUM_DOCS; id++) {
+      assertEquals("occurrences of id " + id, 1, counts[id]);
+    }
+  }
+}
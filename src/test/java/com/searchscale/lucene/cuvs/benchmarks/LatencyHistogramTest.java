@@ -0,0 +1,174 @@
+package com.searchscale.lucene.cuvs.benchmarks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  private static final double[] PERCENTILES = { 0, 1, 10, 50, 90, 99, 99.9, 100 };
+
+  @Test
+  public void smallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 100; value >= 1; value--) {
+      histogram.record(value);
+    }
+    assertEquals(100, histogram.count());
+    assertEquals(100, histogram.maxNanos());
+    assertEquals(50.5, histogram.meanNanos(), 0);
+    assertEquals(1, histogram.valueAtPercentile(0));
+    assertEquals(1, histogram.valueAtPercentile(1));
+    assertEquals(50, histogram.valueAtPercentile(50));
+    assertEquals(90, histogram.valueAtPercentile(90));
+    assertEquals(99, histogram.valueAtPercentile(99));
+    assertEquals(100, histogram.valueAtPercentile(99.9));
+    assertEquals(100, histogram.valueAtPercentile(100));
+    assertEquals(0, histogram.percentileOf(0), 0);
+    assertEquals(50, histogram.percentileOf(50), 0);
+    assertEquals(100, histogram.percentileOf(100), 0);
+    assertEquals(100, histogram.percentileOf(Long.MAX_VALUE), 0);
+  }
+
+  @Test
+  public void bucketValueMapsBackToItsBucket() {
+    int last = LatencyHistogram.bucket(Long.MAX_VALUE);
+    long previous = -1;
+    for (int bucket = 0; bucket <= last; bucket++) {
+      long value = LatencyHistogram.bucketValue(bucket);
+      assertEquals("bucket " + bucket, bucket, LatencyHistogram.bucket(value));
+      assertTrue("bucket " + bucket + " is not above the previous one", value > previous);
+      previous = value;
+    }
+  }
+
+  @Test
+  public void bucketValueIsWithinOneSixtyFourth() {
+    Random random = new Random(42);
+    for (int i = 0; i < 100_000; i++) {
+      long value = random.nextLong() >>> (1 + random.nextInt(63));
+      long bucketValue = LatencyHistogram.bucketValue(LatencyHistogram.bucket(value));
+      assertTrue(value + " recorded as " + bucketValue, Math.abs(bucketValue - value) <= value / 64);
+    }
+    for (int shift = 0; shift < 63; shift++) {
+      for (long value : new long[] { (1L << shift) - 1, 1L << shift, (1L << shift) + 1 }) {
+        long bucketValue = LatencyHistogram.bucketValue(LatencyHistogram.bucket(value));
+        assertTrue(value + " recorded as " + bucketValue, Math.abs(bucketValue - value) <= value / 64);
+      }
+    }
+  }
+
+  @Test
+  public void percentilesAreWithinOneSixtyFourthOfExact() {
+    Random random = new Random(7);
+    long[] values = new long[50_000];
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < values.length; i++) {
+      // Log-uniform from 1 us to 1 s
+      values[i] = (long) Math.pow(10, 3 + 6 * random.nextDouble());
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+    assertEquals(values[values.length - 1], histogram.maxNanos());
+    for (double percentile : PERCENTILES) {
+      long exact = exactPercentile(values, percentile);
+      long estimate = histogram.valueAtPercentile(percentile);
+      assertTrue("p" + percentile + ": " + estimate + " vs " + exact, Math.abs(estimate - exact) <= exact / 64);
+    }
+    assertEquals(values[0], histogram.valueAtPercentile(0));
+    assertEquals(values[values.length - 1], histogram.valueAtPercentile(100));
+  }
+
+  @Test
+  public void addEqualsRecordingIntoOne() {
+    Random random = new Random(3);
+    LatencyHistogram all = new LatencyHistogram();
+    LatencyHistogram first = new LatencyHistogram();
+    LatencyHistogram second = new LatencyHistogram();
+    for (int i = 0; i < 10_000; i++) {
+      long value = random.nextInt(10_000_000);
+      all.record(value);
+      (i % 3 == 0 ? first : second).record(value);
+    }
+    LatencyHistogram merged = new LatencyHistogram();
+    merged.add(first);
+    merged.add(second);
+    assertSameHistogram(all, merged);
+  }
+
+  @Test
+  public void recorderMergesEveryThread() throws Exception {
+    int threads = 8;
+    int perThread = 10_000;
+    LatencyHistogram.Recorder recorder = new LatencyHistogram.Recorder();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    for (int t = 0; t < threads; t++) {
+      pool.submit(() -> {
+        for (int i = 1; i <= perThread; i++) {
+          recorder.record(i);
+        }
+      });
+    }
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+
+    LatencyHistogram expected = new LatencyHistogram();
+    for (int t = 0; t < threads; t++) {
+      for (int i = 1; i <= perThread; i++) {
+        expected.record(i);
+      }
+    }
+    assertSameHistogram(expected, recorder.merged());
+  }
+
+  @Test
+  public void emptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.meanNanos(), 0);
+    assertEquals(0, histogram.valueAtPercentile(50));
+    assertEquals(0, histogram.percentileOf(1000), 0);
+    Map<String, Object> entry = new HashMap<>();
+    histogram.addPercentiles(entry, "latency");
+    assertTrue(entry.isEmpty());
+  }
+
+  @Test
+  public void addPercentilesInMilliseconds() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    Map<String, Object> entry = new HashMap<>();
+    histogram.addPercentiles(entry, "latency");
+    assertEquals(50 / 1e6, (Double) entry.get("latency-p50"), 0);
+    assertEquals(99 / 1e6, (Double) entry.get("latency-p99"), 0);
+    assertEquals(100 / 1e6, (Double) entry.get("latency-max"), 0);
+  }
+
+  /**
+   * Nearest-rank percentile of sorted values
+   */
+  private static long exactPercentile(long[] sorted, double percentile) {
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * sorted.length));
+    return sorted[(int) rank - 1];
+  }
+
+  private static void assertSameHistogram(LatencyHistogram expected, LatencyHistogram actual) {
+    assertEquals(expected.count(), actual.count());
+    assertEquals(expected.maxNanos(), actual.maxNanos());
+    assertEquals(expected.meanNanos(), actual.meanNanos(), 0);
+    for (double percentile : PERCENTILES) {
+      assertEquals("p" + percentile, expected.valueAtPercentile(percentile), actual.valueAtPercentile(percentile));
+    }
+  }
+}